@@ -0,0 +1,56 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.agent;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Java agent that instruments the methods annotated with the Metrics annotations when their class gets loaded, so that
+ * they are not intercepted by the Metrics CDI interceptors, e.g.:
+ * <pre>
+ * java -javaagent:metrics-cdi-agent.jar=com.acme.service,com.acme.repository ...
+ * </pre>
+ * The optional agent arguments are the comma-separated names of the packages to be instrumented, all the packages
+ * being instrumented by default.
+ *
+ * @since 1.7.0
+ */
+public final class MetricsAgent {
+
+    private MetricsAgent() {
+    }
+
+    public static void premain(String arguments, Instrumentation instrumentation) {
+        instrumentation.addTransformer(new MetricsTransformer(packages(arguments)));
+    }
+
+    // Only the classes loaded after the agent gets attached are instrumented
+    public static void agentmain(String arguments, Instrumentation instrumentation) {
+        premain(arguments, instrumentation);
+    }
+
+    private static List<String> packages(String arguments) {
+        List<String> packages = new ArrayList<>();
+        if (arguments == null)
+            return packages;
+        for (String name : arguments.split(","))
+            if (!name.trim().isEmpty())
+                packages.add(name.trim().replace('.', '/') + '/');
+        return packages;
+    }
+}
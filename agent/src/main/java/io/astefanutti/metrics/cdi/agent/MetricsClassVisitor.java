@@ -0,0 +1,321 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.agent;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/* package-private */ final class MetricsClassVisitor extends ClassVisitor {
+
+    private static final Set<String> ANNOTATIONS = new HashSet<>(Arrays.asList(
+        "Lcom/codahale/metrics/annotation/Counted;",
+        "Lcom/codahale/metrics/annotation/ExceptionMetered;",
+        "Lcom/codahale/metrics/annotation/Metered;",
+        "Lcom/codahale/metrics/annotation/Timed;"));
+
+    private static final String INSTRUMENTED = "Lio/astefanutti/metrics/cdi/InstrumentedMetrics$Instrumented;";
+
+    private static final Type RUNTIME = Type.getObjectType("io/astefanutti/metrics/cdi/InstrumentedMetrics");
+
+    private static final Type HANDLE = Type.getObjectType("io/astefanutti/metrics/cdi/InstrumentedMetrics$Handle");
+
+    private static final Method CREATE = Method.getMethod("io.astefanutti.metrics.cdi.InstrumentedMetrics$Handle handle(java.lang.Class, java.lang.String, java.lang.String)");
+
+    private static final Method ENTER = Method.getMethod("int enter(io.astefanutti.metrics.cdi.InstrumentedMetrics$Handle)");
+
+    private static final Method START = Method.getMethod("long start(int)");
+
+    private static final Method EXIT = Method.getMethod("void exit(io.astefanutti.metrics.cdi.InstrumentedMetrics$Handle, int, long)");
+
+    private static final Method ERROR = Method.getMethod("void error(java.lang.Throwable, io.astefanutti.metrics.cdi.InstrumentedMetrics$Handle, int, long)");
+
+    // The names and descriptors of the instrumented methods, indexed by their handle field
+    private final List<String[]> handles = new ArrayList<>();
+
+    private String owner;
+
+    private boolean isInterface;
+
+    private boolean instrumented;
+
+    // Buffered so that the handles get created ahead of the existing static initialization
+    private MethodNode initializer;
+
+    MetricsClassVisitor(ClassVisitor visitor) {
+        super(Opcodes.ASM9, visitor);
+    }
+
+    boolean isInstrumented() {
+        return instrumented;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        owner = name;
+        isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        if (!isInterface && "<clinit>".equals(name)) {
+            initializer = new MethodNode(Opcodes.ASM9, access, name, descriptor, signature, exceptions);
+            return initializer;
+        }
+        MethodVisitor visitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+        // Constructors are left to the interceptors as they cannot be instrumented before the super constructor invocation
+        if (isInterface || name.startsWith("<") || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE | Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0)
+            return visitor;
+        return new MetricsMethodVisitor(visitor, access, name, descriptor);
+    }
+
+    @Override
+    public void visitEnd() {
+        if (instrumented) {
+            for (int i = 0; i < handles.size(); i++)
+                super.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, handle(i), HANDLE.getDescriptor(), null, null).visitEnd();
+
+            // The handles are resolved once, when the class gets initialized, rather than on every invocation
+            if (initializer == null) {
+                initializer = new MethodNode(Opcodes.ASM9, Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+                initializer.visitCode();
+                initializer.visitInsn(Opcodes.RETURN);
+                initializer.visitMaxs(0, 0);
+                initializer.visitEnd();
+            }
+            MethodVisitor visitor = super.visitMethod(initializer.access, initializer.name, initializer.desc, initializer.signature, initializer.exceptions.toArray(new String[0]));
+            initializer.accept(new HandlesInitializer(visitor));
+        } else if (initializer != null) {
+            initializer.accept(cv);
+        }
+        super.visitEnd();
+    }
+
+    private static String handle(int index) {
+        return "metrics$handle$" + index;
+    }
+
+    private final class HandlesInitializer extends MethodVisitor {
+
+        HandlesInitializer(MethodVisitor visitor) {
+            super(Opcodes.ASM9, visitor);
+        }
+
+        @Override
+        public void visitCode() {
+            super.visitCode();
+            for (int i = 0; i < handles.size(); i++) {
+                super.visitLdcInsn(Type.getObjectType(owner));
+                super.visitLdcInsn(handles.get(i)[0]);
+                super.visitLdcInsn(handles.get(i)[1]);
+                super.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME.getInternalName(), CREATE.getName(), CREATE.getDescriptor(), false);
+                super.visitFieldInsn(Opcodes.PUTSTATIC, owner, handle(i), HANDLE.getDescriptor());
+            }
+        }
+    }
+
+    private final class MetricsMethodVisitor extends AdviceAdapter {
+
+        private final Label handler = new Label();
+
+        private boolean annotated;
+
+        // Start of the current range protected by the exception handler, null until the next instruction of the method body
+        private Label range;
+
+        private boolean handled;
+
+        private int handle;
+
+        private int state;
+
+        private int start;
+
+        MetricsMethodVisitor(MethodVisitor visitor, int access, String name, String descriptor) {
+            super(Opcodes.ASM9, visitor, access, name, descriptor);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (visible && !annotated && ANNOTATIONS.contains(descriptor)) {
+                annotated = true;
+                // Marks the method as instrumented so that its metrics annotations do not get bound to the interceptors
+                AnnotationVisitor marker = super.visitAnnotation(INSTRUMENTED, true);
+                if (marker != null)
+                    marker.visitEnd();
+            }
+            return super.visitAnnotation(descriptor, visible);
+        }
+
+        @Override
+        protected void onMethodEnter() {
+            if (!annotated)
+                return;
+
+            instrumented = true;
+            handle = handles.size();
+            handles.add(new String[] {getName(), methodDesc});
+            getStatic(Type.getObjectType(owner), handle(handle), HANDLE);
+            invokeStatic(RUNTIME, ENTER);
+            state = newLocal(Type.INT_TYPE);
+            storeLocal(state);
+            loadLocal(state);
+            invokeStatic(RUNTIME, START);
+            start = newLocal(Type.LONG_TYPE);
+            storeLocal(start);
+        }
+
+        @Override
+        protected void onMethodExit(int opcode) {
+            // Thrown exceptions are handled by the exception handler that protects the method body
+            if (!annotated || opcode == ATHROW)
+                return;
+
+            // The protected range ends before the exit call so that its exceptions are not reported as thrown by the method
+            protect();
+            getStatic(Type.getObjectType(owner), handle(handle), HANDLE);
+            loadLocal(state);
+            loadLocal(start);
+            invokeStatic(RUNTIME, EXIT);
+        }
+
+        // Ends the current protected range, if any instruction of the method body has been visited since it started
+        private void protect() {
+            if (range == null)
+                return;
+            Label end = mark();
+            visitTryCatchBlock(range, end, handler, "java/lang/Throwable");
+            range = null;
+            handled = true;
+        }
+
+        // Starts a protected range on the first instruction of the method body that follows the instrumentation code
+        private void instruction() {
+            if (annotated && range == null)
+                range = mark();
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            // The returns are not protected as they follow the exit call
+            if (opcode < IRETURN || opcode > RETURN)
+                instruction();
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            instruction();
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            instruction();
+            super.visitVarInsn(opcode, var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            instruction();
+            super.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            instruction();
+            super.visitFieldInsn(opcode, owner, name, descriptor);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            instruction();
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrap, Object... arguments) {
+            instruction();
+            super.visitInvokeDynamicInsn(name, descriptor, bootstrap, arguments);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            instruction();
+            super.visitJumpInsn(opcode, label);
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            instruction();
+            super.visitLdcInsn(value);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            instruction();
+            super.visitIincInsn(var, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            instruction();
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            instruction();
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int dimensions) {
+            instruction();
+            super.visitMultiANewArrayInsn(descriptor, dimensions);
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            if (annotated)
+                protect();
+            if (handled) {
+                mark(handler);
+                dup();
+                getStatic(Type.getObjectType(owner), handle(handle), HANDLE);
+                loadLocal(state);
+                loadLocal(start);
+                invokeStatic(RUNTIME, ERROR);
+                throwException();
+            }
+            super.visitMaxs(maxStack, maxLocals);
+        }
+    }
+}
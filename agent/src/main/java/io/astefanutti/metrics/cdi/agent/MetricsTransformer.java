@@ -0,0 +1,115 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.agent;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.nio.charset.StandardCharsets;
+import java.security.ProtectionDomain;
+import java.util.List;
+
+/**
+ * Rewrites the classes that declare methods annotated with the Metrics annotations so that they call the
+ * {@link io.astefanutti.metrics.cdi.InstrumentedMetrics} runtime directly.
+ *
+ * @since 1.7.0
+ */
+public final class MetricsTransformer implements ClassFileTransformer {
+
+    private static final byte[] ANNOTATIONS = "Lcom/codahale/metrics/annotation/".getBytes(StandardCharsets.UTF_8);
+
+    private static final String[] EXCLUDED = {"java/", "javax/", "jdk/", "sun/", "com/sun/", "com/codahale/metrics/", "org/objectweb/asm/"};
+
+    private final List<String> packages;
+
+    /**
+     * @param packages the internal name prefixes of the packages to be instrumented, all the packages if empty
+     */
+    public MetricsTransformer(List<String> packages) {
+        this.packages = packages;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> redefined, ProtectionDomain domain, byte[] buffer) {
+        // Cheaply skip the classes that cannot declare metrics annotations before parsing them
+        if (className == null || redefined != null || !isIncluded(className) || !contains(buffer, ANNOTATIONS))
+            return null;
+
+        try {
+            ClassReader reader = new ClassReader(buffer);
+            ClassWriter writer = new MetricsClassWriter(reader, loader);
+            MetricsClassVisitor visitor = new MetricsClassVisitor(writer);
+            reader.accept(visitor, ClassReader.EXPAND_FRAMES);
+            return visitor.isInstrumented() ? writer.toByteArray() : null;
+        } catch (RuntimeException cause) {
+            // Leave the class untouched so that it gets intercepted
+            return null;
+        }
+    }
+
+    private boolean isIncluded(String className) {
+        for (String excluded : EXCLUDED)
+            if (className.startsWith(excluded))
+                return false;
+        // The Metrics CDI classes are excluded though not the classes of its sub-packages
+        if (className.startsWith("io/astefanutti/metrics/cdi/") && className.indexOf('/', "io/astefanutti/metrics/cdi/".length()) < 0)
+            return false;
+        if (packages.isEmpty())
+            return true;
+        for (String name : packages)
+            if (className.startsWith(name))
+                return true;
+        return false;
+    }
+
+    private static boolean contains(byte[] buffer, byte[] bytes) {
+        search:
+        for (int i = 0; i <= buffer.length - bytes.length; i++) {
+            for (int j = 0; j < bytes.length; j++)
+                if (buffer[i + j] != bytes[j])
+                    continue search;
+            return true;
+        }
+        return false;
+    }
+
+    // Resolves the common super classes from the class loader of the transformed class, without failing the transformation
+    private static final class MetricsClassWriter extends ClassWriter {
+
+        private final ClassLoader loader;
+
+        MetricsClassWriter(ClassReader reader, ClassLoader loader) {
+            super(reader, ClassWriter.COMPUTE_FRAMES);
+            this.loader = loader;
+        }
+
+        @Override
+        protected ClassLoader getClassLoader() {
+            return loader != null ? loader : super.getClassLoader();
+        }
+
+        @Override
+        protected String getCommonSuperClass(String type1, String type2) {
+            try {
+                return super.getCommonSuperClass(type1, type2);
+            } catch (RuntimeException | LinkageError cause) {
+                return "java/lang/Object";
+            }
+        }
+    }
+}
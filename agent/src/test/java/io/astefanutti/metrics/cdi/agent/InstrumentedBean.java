@@ -0,0 +1,60 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.agent;
+
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+
+public class InstrumentedBean {
+
+    private int calls;
+
+    @Timed
+    public String timedMethod(String value) {
+        calls++;
+        return value;
+    }
+
+    @ExceptionMetered
+    public void exceptionMeteredMethod(RuntimeException exception) {
+        throw exception;
+    }
+
+    @Counted
+    private long countedMethod(long value) {
+        try {
+            throw new IllegalStateException();
+        } catch (IllegalStateException cause) {
+            return value + calls;
+        }
+    }
+
+    @Metered
+    public int meteredMethod() {
+        return calls;
+    }
+
+    @Timed
+    public static int staticMethod(int value) {
+        return value;
+    }
+
+    public long notInstrumentedMethod(long value) {
+        return countedMethod(value);
+    }
+}
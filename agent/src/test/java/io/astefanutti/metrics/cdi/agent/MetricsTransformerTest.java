@@ -0,0 +1,134 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.agent;
+
+import io.astefanutti.metrics.cdi.InstrumentedMetrics;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MetricsTransformerTest {
+
+    private final MetricsTransformer transformer = new MetricsTransformer(Collections.emptyList());
+
+    @Test
+    public void skipNotAnnotatedClasses() throws IOException {
+        assertThat("Class is transformed", transform(MetricsTransformerTest.class), is(nullValue()));
+    }
+
+    @Test
+    public void skipNotIncludedPackages() throws IOException {
+        MetricsTransformer transformer = new MetricsTransformer(Collections.singletonList("com/acme/"));
+        assertThat("Class is transformed", transformer.transform(getClass().getClassLoader(), internalName(InstrumentedBean.class), null, null, bytes(InstrumentedBean.class)), is(nullValue()));
+    }
+
+    @Test
+    public void callInstrumentedMethods() throws Exception {
+        byte[] bytes = transform(InstrumentedBean.class);
+        assertThat("Class is not transformed", bytes, is(notNullValue()));
+
+        Class<?> type = new DefiningClassLoader(getClass().getClassLoader()).define(InstrumentedBean.class.getName(), bytes);
+        Object bean = type.getConstructor().newInstance();
+
+        assertThat("Timed method return value is incorrect", type.getMethod("timedMethod", String.class).invoke(bean, "value"), is(equalTo("value")));
+        assertThat("Static method return value is incorrect", type.getMethod("staticMethod", int.class).invoke(null, 1), is(equalTo(1)));
+        assertThat("Metered method return value is incorrect", type.getMethod("meteredMethod").invoke(bean), is(equalTo(1)));
+        assertThat("Not instrumented method return value is incorrect", type.getMethod("notInstrumentedMethod", long.class).invoke(bean, 1L), is(equalTo(2L)));
+
+        RuntimeException exception = new RuntimeException();
+        try {
+            type.getMethod("exceptionMeteredMethod", RuntimeException.class).invoke(bean, exception);
+            fail("No exception has been re-thrown!");
+        } catch (InvocationTargetException cause) {
+            assertThat("Exception is not re-thrown", cause.getCause(), is(sameInstance(exception)));
+        }
+    }
+
+    @Test
+    public void markInstrumentedMethods() throws Exception {
+        Class<?> type = new DefiningClassLoader(getClass().getClassLoader()).define(InstrumentedBean.class.getName(), transform(InstrumentedBean.class));
+
+        // The Metrics CDI extension does not bind the metrics annotations of the marked methods to the interceptors
+        for (String name : new String[] {"timedMethod", "exceptionMeteredMethod", "countedMethod", "meteredMethod", "staticMethod"})
+            assertThat("Method [" + name + "] is not marked as instrumented", method(type, name).isAnnotationPresent(InstrumentedMetrics.Instrumented.class), is(true));
+        assertThat("Method is marked as instrumented", method(type, "notInstrumentedMethod").isAnnotationPresent(InstrumentedMetrics.Instrumented.class), is(false));
+        assertThat("Original method is marked as instrumented", InstrumentedBean.class.getMethod("timedMethod", String.class).isAnnotationPresent(InstrumentedMetrics.Instrumented.class), is(false));
+    }
+
+    @Test
+    public void createHandlesOnInitialization() throws Exception {
+        Class<?> type = new DefiningClassLoader(getClass().getClassLoader()).define(InstrumentedBean.class.getName(), transform(InstrumentedBean.class));
+
+        Field[] handles = Arrays.stream(type.getDeclaredFields()).filter(field -> field.getType() == InstrumentedMetrics.Handle.class).toArray(Field[]::new);
+        assertThat("Handle fields are incorrect", handles, is(arrayWithSize(5)));
+        for (Field handle : handles) {
+            assertThat("Handle field is not static final", Modifier.isStatic(handle.getModifiers()) && Modifier.isFinal(handle.getModifiers()), is(true));
+            assertThat("Handle field is not synthetic", handle.isSynthetic(), is(true));
+            handle.setAccessible(true);
+            assertThat("Handle is not created", handle.get(null), is(notNullValue()));
+        }
+    }
+
+    private static Method method(Class<?> type, String name) {
+        return Arrays.stream(type.getDeclaredMethods()).filter(method -> method.getName().equals(name)).findFirst().orElseThrow(IllegalArgumentException::new);
+    }
+
+    private byte[] transform(Class<?> type) throws IOException {
+        return transformer.transform(getClass().getClassLoader(), internalName(type), null, null, bytes(type));
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    private static byte[] bytes(Class<?> type) throws IOException {
+        try (InputStream stream = type.getResourceAsStream(type.getSimpleName() + ".class")) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = stream.read(buffer)) != -1; )
+                bytes.write(buffer, 0, read);
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class DefiningClassLoader extends ClassLoader {
+
+        DefiningClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.annotation.Gauge;
+import io.astefanutti.metrics.cdi.Aggregate;
+
+import javax.enterprise.context.Dependent;
+
+@Dependent
+public class AggregatedGaugeMethodBean {
+
+    private long connections;
+
+    @Gauge(name = "connections")
+    @Aggregate
+    public long getConnections() {
+        return connections;
+    }
+
+    @Gauge(name = "maxConnections")
+    @Aggregate(Aggregate.Function.MAX)
+    public long getMaxConnections() {
+        return connections;
+    }
+
+    public void setConnections(long connections) {
+        this.connections = connections;
+    }
+}
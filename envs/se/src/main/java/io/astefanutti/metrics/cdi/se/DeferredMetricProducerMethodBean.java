@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.annotation.Metric;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Produces;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ApplicationScoped
+public class DeferredMetricProducerMethodBean {
+
+    static final AtomicInteger PRODUCTIONS = new AtomicInteger();
+
+    @Produces
+    @Metric(name = "deferred-gauge")
+    Gauge<Integer> deferredGauge() {
+        PRODUCTIONS.incrementAndGet();
+        return () -> 42;
+    }
+
+    @Produces
+    @Metric(name = "metric-set")
+    MetricSet metricSet() {
+        Map<String, com.codahale.metrics.Metric> metrics = new HashMap<>();
+        metrics.put("counter", new Counter());
+        metrics.put("gauge", (Gauge<String>) () -> "value");
+        return () -> metrics;
+    }
+}
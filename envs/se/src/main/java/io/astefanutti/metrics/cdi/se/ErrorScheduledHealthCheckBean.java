@@ -0,0 +1,46 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.health.HealthCheck;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Named;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@ApplicationScoped
+@Named("errorScheduledHealthCheck")
+public class ErrorScheduledHealthCheckBean extends HealthCheck {
+
+    private final AtomicLong checkCount = new AtomicLong();
+
+    @Override
+    protected Result check() {
+        checkCount.incrementAndGet();
+        throw new NoClassDefFoundError("Health check dependency is missing");
+    }
+
+    long getCheckCount() {
+        return checkCount.get();
+    }
+
+    static void configure(@Observes MetricsConfiguration configuration) {
+        configuration.healthCheckSchedule(10L, 1000L, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Named;
+
+@ApplicationScoped
+@Named("instrumentedMethodBean")
+public class InstrumentedMethodBean {
+
+    @Timed(name = "instrumentedTimer", absolute = true)
+    public String timedMethod(String value) {
+        return value;
+    }
+
+    @Counted(name = "instrumentedCounter", absolute = true, monotonic = true)
+    public long countedMethod(long value) {
+        return value;
+    }
+
+    @Metered(name = "instrumentedMeter", absolute = true)
+    public void meteredMethod() {
+    }
+
+    @ExceptionMetered(name = "instrumentedExceptionMeter", absolute = true)
+    public void exceptionMeteredMethod(RuntimeException exception) {
+        throw exception;
+    }
+
+    // Self-invocations are not intercepted, though instrumented
+    public String selfInvocation(String value) {
+        return timedMethod(value);
+    }
+}
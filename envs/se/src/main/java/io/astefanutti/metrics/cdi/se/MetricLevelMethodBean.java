@@ -0,0 +1,47 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.Gauge;
+import com.codahale.metrics.annotation.Timed;
+import io.astefanutti.metrics.cdi.MetricLevel;
+
+import javax.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class MetricLevelMethodBean {
+
+    @Timed(name = "infoTimer")
+    public void infoMethod() {
+    }
+
+    @Timed(name = "debugTimer")
+    @MetricLevel(MetricLevel.DEBUG)
+    public void debugMethod() {
+    }
+
+    @Counted(name = "traceCounter")
+    @MetricLevel(MetricLevel.TRACE)
+    public void traceMethod() {
+    }
+
+    @Gauge(name = "debugGauge")
+    @MetricLevel(MetricLevel.DEBUG)
+    public long getDebugGauge() {
+        return 0L;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.Flow;
+
+@ApplicationScoped
+public class PublisherMethodBean {
+
+    @Timed(name = "publisherTimer")
+    @Metered(name = "publisherMeter")
+    public Flow.Publisher<Integer> range(int count) {
+        return subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+
+            private int next;
+
+            private boolean cancelled;
+
+            @Override
+            public void request(long n) {
+                for (long i = 0; i < n && next < count && !cancelled; i++)
+                    subscriber.onNext(next++);
+                if (next == count && !cancelled) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+            }
+        });
+    }
+
+    @Timed(name = "failingPublisherTimer")
+    public Flow.Publisher<Integer> failing() {
+        return subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+
+            @Override
+            public void request(long n) {
+                subscriber.onError(new IllegalStateException());
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+import io.astefanutti.metrics.cdi.MeasuredStream;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+@ApplicationScoped
+public class StreamMethodBean {
+
+    @Timed(name = "streamTimer")
+    @Metered(name = "streamMeter")
+    @MeasuredStream(elements = true)
+    public Stream<String> stream(String... elements) {
+        return Stream.of(elements);
+    }
+
+    @Timed(name = "intStreamTimer")
+    @MeasuredStream(elements = true)
+    public IntStream range(int count) {
+        return IntStream.range(0, count);
+    }
+
+    @Timed(name = "plainStreamTimer")
+    @Metered(name = "plainStreamMeter")
+    public Stream<String> plain(String... elements) {
+        return Stream.of(elements);
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import io.astefanutti.metrics.cdi.WeightedMetered;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Collections;
+import java.util.List;
+
+@ApplicationScoped
+@WeightedMetered(name = "weightedMeteredClass", absolute = true)
+public class WeightedMeteredClassBean {
+
+    private long resets;
+
+    public List<String> fetch(int count) {
+        return Collections.nCopies(count, "record");
+    }
+
+    public int size() {
+        return 3;
+    }
+
+    public void reset() {
+        resets++;
+    }
+
+    public long getResets() {
+        return resets;
+    }
+}
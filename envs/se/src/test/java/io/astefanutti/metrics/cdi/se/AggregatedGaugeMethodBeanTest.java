@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class AggregatedGaugeMethodBeanTest {
+
+    private final static String SUM_GAUGE_NAME = MetricRegistry.name(AggregatedGaugeMethodBean.class, "connections");
+
+    private final static String MAX_GAUGE_NAME = MetricRegistry.name(AggregatedGaugeMethodBean.class, "maxConnections");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(AggregatedGaugeMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private Instance<AggregatedGaugeMethodBean> instance;
+
+    @Test
+    public void gaugesAggregatedOverLiveInstances() {
+        AggregatedGaugeMethodBean[] beans = new AggregatedGaugeMethodBean[3];
+        for (int i = 0; i < beans.length; i++) {
+            beans[i] = instance.get();
+            beans[i].setConnections(i + 1);
+        }
+
+        assertThat("Gauges are not registered correctly", registry.getGauges().keySet(), containsInAnyOrder(SUM_GAUGE_NAME, MAX_GAUGE_NAME));
+        Gauge<?> sum = registry.getGauges().get(SUM_GAUGE_NAME);
+        Gauge<?> max = registry.getGauges().get(MAX_GAUGE_NAME);
+        assertThat("Sum gauge value is incorrect", sum.getValue(), is(equalTo((Object) 6L)));
+        assertThat("Max gauge value is incorrect", max.getValue(), is(equalTo((Object) 3L)));
+
+        instance.destroy(beans[2]);
+        assertThat("Gauges are not registered correctly", registry.getGauges().keySet(), containsInAnyOrder(SUM_GAUGE_NAME, MAX_GAUGE_NAME));
+        assertThat("Sum gauge value is incorrect", sum.getValue(), is(equalTo((Object) 3L)));
+        assertThat("Max gauge value is incorrect", max.getValue(), is(equalTo((Object) 2L)));
+
+        instance.destroy(beans[0]);
+        instance.destroy(beans[1]);
+        assertThat("Sum gauge value is incorrect", sum.getValue(), is(equalTo((Object) 0L)));
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class DeferredMetricProducerMethodBeanTest {
+
+    private final static String GAUGE_NAME = MetricRegistry.name(DeferredMetricProducerMethodBean.class, "deferred-gauge");
+
+    private final static String METRIC_SET_NAME = MetricRegistry.name(DeferredMetricProducerMethodBean.class, "metric-set");
+
+    @Deployment
+    public static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(DeferredMetricProducerMethodBean.class)
+            // Metrics CDI Extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Test
+    @InSequence(1)
+    public void metricsRegisteredButNotProducedYet() {
+        assertThat("Metrics are not registered correctly", registry.getMetrics(),
+            allOf(
+                hasKey(GAUGE_NAME),
+                hasKey(MetricRegistry.name(METRIC_SET_NAME, "counter")),
+                hasKey(MetricRegistry.name(METRIC_SET_NAME, "gauge")),
+                not(hasKey(METRIC_SET_NAME))
+            )
+        );
+        assertThat("Gauge is produced eagerly", DeferredMetricProducerMethodBean.PRODUCTIONS.get(), is(0));
+    }
+
+    @Test
+    @InSequence(2)
+    public void metricsProducedOnFirstAccess() {
+        Gauge<?> gauge = registry.getGauges().get(GAUGE_NAME);
+        assertThat("Gauge value is incorrect", gauge.getValue(), is(equalTo((Object) 42)));
+        assertThat("Gauge is not produced on first access", DeferredMetricProducerMethodBean.PRODUCTIONS.get(), is(1));
+
+        gauge.getValue();
+        assertThat("Gauge is produced on every access", DeferredMetricProducerMethodBean.PRODUCTIONS.get(), is(1));
+
+        Gauge<?> metric = registry.getGauges().get(MetricRegistry.name(METRIC_SET_NAME, "gauge"));
+        assertThat("Metric set gauge value is incorrect", metric.getValue(), is(equalTo((Object) "value")));
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class DependentGaugeMethodBeanTest {
+
+    private final static String GAUGE_NAME = MetricRegistry.name(DependentGaugeMethodBean.class, "dependentGaugeMethod");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(DependentGaugeMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private Instance<DependentGaugeMethodBean> instance;
+
+    @Test
+    public void gaugeUnregisteredOnInstanceDestruction() {
+        DependentGaugeMethodBean bean = instance.get();
+        bean.setGauge(1L);
+        assertThat("Gauge is not registered correctly", registry.getGauges(), hasKey(GAUGE_NAME));
+        assertThat("Gauge value is incorrect", registry.getGauges().get(GAUGE_NAME).getValue(), is(equalTo((Object) 1L)));
+
+        instance.destroy(bean);
+        assertThat("Gauge is not unregistered on instance destruction", registry.getGauges(), not(hasKey(GAUGE_NAME)));
+
+        // A new instance registers the gauge again
+        bean = instance.get();
+        bean.setGauge(2L);
+        @SuppressWarnings("unchecked")
+        Gauge<Long> gauge = (Gauge<Long>) registry.getGauges().get(GAUGE_NAME);
+        assertThat("Gauge value is incorrect", gauge.getValue(), is(equalTo(2L)));
+        instance.destroy(bean);
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class ErrorScheduledHealthCheckBeanTest {
+
+    @Deployment
+    public static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(ErrorScheduledHealthCheckBean.class)
+            // Metrics CDI Extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private HealthCheckRegistry registry;
+
+    @Inject
+    private ErrorScheduledHealthCheckBean bean;
+
+    @Test
+    public void healthCheckExecutedAfterError() throws InterruptedException {
+        // The executions go on after an error is thrown rather than getting cancelled
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (bean.getCheckCount() < 2L && System.currentTimeMillis() < deadline)
+            Thread.sleep(10L);
+
+        assertThat("Health check is not executed after an error", bean.getCheckCount(), is(greaterThan(1L)));
+        HealthCheck.Result result = registry.runHealthCheck("errorScheduledHealthCheck");
+        assertThat("Health check result is healthy", result.isHealthy(), is(equalTo(false)));
+        assertThat("Health check result error is incorrect", result.getError(), is(instanceOf(NoClassDefFoundError.class)));
+    }
+}
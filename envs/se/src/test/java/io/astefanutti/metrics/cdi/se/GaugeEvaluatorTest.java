@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.GaugeEvaluator;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class GaugeEvaluatorTest {
+
+    private final static String FAST_GAUGE_NAME = MetricRegistry.name(SlowGaugeMethodBean.class, "fastGauge");
+
+    private final static String SLOW_GAUGE_NAME = MetricRegistry.name(SlowGaugeMethodBean.class, "slowGauge");
+
+    private final static String FAILING_GAUGE_NAME = MetricRegistry.name(SlowGaugeMethodBean.class, "failingGauge");
+
+    private final static String ERRORS_NAME = MetricRegistry.name(GaugeEvaluator.class, "errors");
+
+    private final static String TIMEOUTS_NAME = MetricRegistry.name(GaugeEvaluator.class, "timeouts");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(SlowGaugeMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.gaugeTimeout(100L, TimeUnit.MILLISECONDS);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private GaugeEvaluator evaluator;
+
+    @Inject
+    private SlowGaugeMethodBean bean;
+
+    @Test
+    @InSequence(1)
+    public void gaugesEvaluatedInTime() {
+        bean.setGauge(1L);
+        SortedMap<String, Gauge> gauges = evaluator.getGauges();
+        assertThat("Fast gauge value is incorrect", gauges.get(FAST_GAUGE_NAME).getValue(), is(equalTo((Object) 1L)));
+        assertThat("Slow gauge value is incorrect", gauges.get(SLOW_GAUGE_NAME).getValue(), is(equalTo((Object) 1L)));
+        assertThat("Timeouts count is incorrect", registry.getCounters().get(TIMEOUTS_NAME).getCount(), is(equalTo(0L)));
+        assertThat("Errors count is incorrect", registry.getCounters().get(ERRORS_NAME).getCount(), is(equalTo(0L)));
+    }
+
+    @Test
+    @InSequence(2)
+    public void failingGaugeReturnsLastValue() {
+        bean.setGauge(2L);
+        bean.setFailing(true);
+        SortedMap<String, Gauge> gauges = evaluator.getGauges();
+        assertThat("Fast gauge value is incorrect", gauges.get(FAST_GAUGE_NAME).getValue(), is(equalTo((Object) 2L)));
+        assertThat("Failing gauge value is not the last value", gauges.get(FAILING_GAUGE_NAME).getValue(), is(equalTo((Object) 1L)));
+        assertThat("Errors count is incorrect", registry.getCounters().get(ERRORS_NAME).getCount(), is(equalTo(1L)));
+
+        bean.setFailing(false);
+        gauges = evaluator.getGauges();
+        assertThat("Recovered gauge value is incorrect", gauges.get(FAILING_GAUGE_NAME).getValue(), is(equalTo((Object) 2L)));
+        assertThat("Errors count is incorrect", registry.getCounters().get(ERRORS_NAME).getCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    @InSequence(3)
+    public void slowGaugeReturnsLastValue() {
+        bean.setGauge(3L);
+        bean.setDelay(1000L);
+        SortedMap<String, Gauge> gauges = evaluator.getGauges();
+        assertThat("Fast gauge value is incorrect", gauges.get(FAST_GAUGE_NAME).getValue(), is(equalTo((Object) 3L)));
+        assertThat("Slow gauge value is not the last value", gauges.get(SLOW_GAUGE_NAME).getValue(), is(equalTo((Object) 2L)));
+        assertThat("Timeouts count is incorrect", registry.getCounters().get(TIMEOUTS_NAME).getCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    @InSequence(4)
+    public void hungGaugesDoNotStarveOthers() {
+        CountDownLatch latch = new CountDownLatch(1);
+        int hung = Runtime.getRuntime().availableProcessors() + 2;
+        for (int i = 0; i < hung; i++)
+            registry.register("hungGauge" + i, (Gauge<Long>) () -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException cause) {
+                    Thread.currentThread().interrupt();
+                }
+                return 0L;
+            });
+        try {
+            for (long value = 4L; value <= 5L; value++) {
+                bean.setGauge(value);
+                SortedMap<String, Gauge> gauges = evaluator.getGauges();
+                assertThat("Fast gauge value is incorrect", gauges.get(FAST_GAUGE_NAME).getValue(), is(equalTo((Object) value)));
+                assertThat("Hung gauge value is incorrect", gauges.get("hungGauge0").getValue(), is(nullValue()));
+            }
+        } finally {
+            latch.countDown();
+            for (int i = 0; i < hung; i++)
+                registry.remove("hungGauge" + i);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.annotation.Gauge;
+import com.codahale.metrics.annotation.Timed;
+import io.astefanutti.metrics.cdi.MetricsMetadata;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class GeneratedMetadataTest {
+
+    @Test
+    public void generatedMetricNames() throws ReflectiveOperationException {
+        MetricsMetadata metadata = metadata(GaugeMethodBean.class);
+        assertThat("Metric name is incorrect", metadata.metricName(Gauge.class, "getGauge()"), is(equalTo(GaugeMethodBean.class.getName() + ".gaugeMethod")));
+        assertThat("Metric name is incorrect", metadata.metricName(Timed.class, "getGauge()"), is(nullValue()));
+    }
+
+    @Test
+    public void generatedGaugeAccessor() throws ReflectiveOperationException {
+        GaugeMethodBean bean = new GaugeMethodBean();
+        bean.setGauge(42L);
+        assertThat("Gauge value is incorrect", metadata(GaugeMethodBean.class).gauge("getGauge()").apply(bean), is(equalTo(42L)));
+    }
+
+    @Test
+    public void generatedParameterNames() throws ReflectiveOperationException {
+        MetricsMetadata metadata = metadata(MetricProducerMethodBean.class);
+        String member = "cacheHitRatioGauge(" + Meter.class.getName() + "," + Timer.class.getName() + ")";
+        assertThat("Parameter name is incorrect", metadata.parameterName(member, 0), is(equalTo("hits")));
+        assertThat("Parameter name is incorrect", metadata.parameterName(member, 1), is(equalTo("calls")));
+    }
+
+    private static MetricsMetadata metadata(Class<?> type) throws ReflectiveOperationException {
+        return (MetricsMetadata) Class.forName(type.getName() + "_MetricsMetadata").getConstructor().newInstance();
+    }
+}
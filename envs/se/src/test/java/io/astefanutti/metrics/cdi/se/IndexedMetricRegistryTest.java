@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.IndexedMetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class IndexedMetricRegistryTest {
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TimerFieldBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Test
+    public void indexedMetricRegistryViews() {
+        assertThat("Default metric registry is not indexed", registry, is(instanceOf(IndexedMetricRegistry.class)));
+        IndexedMetricRegistry indexed = (IndexedMetricRegistry) registry;
+
+        Counter counter = registry.counter("indexed.counter");
+        registry.meter("indexed.meter");
+        registry.counter("other.counter");
+
+        assertThat("Counters are not indexed correctly", registry.getCounters().keySet(), contains("indexed.counter", "other.counter"));
+        assertThat("Counter view is not cached", registry.getCounters().get("indexed.counter"), is(sameInstance(counter)));
+        assertThat("Prefix query is incorrect", indexed.getMetrics(Metric.class, "indexed.").keySet(), containsInAnyOrder("indexed.counter", "indexed.meter"));
+
+        registry.remove("indexed.counter");
+        assertThat("Counter view is not invalidated", registry.getCounters().keySet(), contains("other.counter"));
+        assertThat("Prefix query is not invalidated", indexed.getMetrics(Counter.class, "indexed.").keySet(), is(empty()));
+    }
+}
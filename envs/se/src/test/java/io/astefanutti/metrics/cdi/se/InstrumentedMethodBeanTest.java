@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.InstrumentedMetrics;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import io.astefanutti.metrics.cdi.agent.MetricsTransformer;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.ByteArrayAsset;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(Arquillian.class)
+public class InstrumentedMethodBeanTest {
+
+    // The test beans get woven under another name so that the test class loader does not load the original classes instead
+    private static final String WOVEN = "io/astefanutti/metrics/cdi/se/WovenMethodBean";
+
+    private static final String WOVEN_CLASS = "io/astefanutti/metrics/cdi/se/WovenClassBean";
+
+    @Deployment
+    static Archive<?> createTestArchive() throws IOException {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test beans instrumented by the Metrics CDI agent
+            .add(new ByteArrayAsset(woven(InstrumentedMethodBean.class, WOVEN)), WOVEN + ".class")
+            .add(new ByteArrayAsset(woven(InstrumentedClassBean.class, WOVEN_CLASS)), WOVEN_CLASS + ".class")
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private BeanManager manager;
+
+    @Test
+    @InSequence(1)
+    public void instrumentedMethodsAreNotIntercepted() throws Exception {
+        Object bean = bean();
+        // The interceptors would measure the invocations as well if the metrics annotations were not stripped
+        assertThat("Timed method return value is incorrect", invoke(bean, "timedMethod", String.class, "value"), is(equalTo("value")));
+        assertThat("Timer count is incorrect", registry.getTimers().get("instrumentedTimer").getCount(), is(equalTo(1L)));
+
+        assertThat("Counted method return value is incorrect", invoke(bean, "countedMethod", long.class, 1L), is(equalTo(1L)));
+        assertThat("Counter count is incorrect", registry.getCounters().get("instrumentedCounter").getCount(), is(equalTo(1L)));
+
+        invoke(bean, "meteredMethod", null, null);
+        assertThat("Meter count is incorrect", registry.getMeters().get("instrumentedMeter").getCount(), is(equalTo(1L)));
+
+        assertThat("Method is not marked as instrumented", manager.getBeans("instrumentedMethodBean").iterator().next().getBeanClass().getMethod("timedMethod", String.class).isAnnotationPresent(InstrumentedMetrics.Instrumented.class), is(true));
+    }
+
+    @Test
+    @InSequence(2)
+    public void instrumentedMethodsThrowingAreMetered() throws Exception {
+        RuntimeException exception = new RuntimeException();
+        try {
+            invoke(bean(), "exceptionMeteredMethod", RuntimeException.class, exception);
+            fail("No exception has been re-thrown!");
+        } catch (InvocationTargetException cause) {
+            assertThat("Exception is not re-thrown", cause.getCause(), is(sameInstance(exception)));
+        }
+        assertThat("Exception meter count is incorrect", registry.getMeters().get("instrumentedExceptionMeter").getCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    @InSequence(3)
+    public void selfInvocationsAreInstrumented() throws Exception {
+        assertThat("Self-invocation return value is incorrect", invoke(bean(), "selfInvocation", String.class, "value"), is(equalTo("value")));
+        assertThat("Timer count is incorrect", registry.getTimers().get("instrumentedTimer").getCount(), is(equalTo(2L)));
+    }
+
+    @Test
+    @InSequence(4)
+    public void instrumentedMethodsOfAnnotatedClassAreMeasuredOnce() throws Exception {
+        // The method annotation gets woven while the bean class annotation remains bound to the interceptor
+        assertThat("Counted method return value is incorrect", invoke(bean("instrumentedClassBean"), "countedMethod", long.class, 1L), is(equalTo(1L)));
+        assertThat("Counter count is incorrect", registry.getCounters().get("instrumentedClassCounter").getCount(), is(equalTo(1L)));
+        assertThat("Timer count is incorrect", registry.getTimers().get("instrumentedClassTimer.countedMethod").getCount(), is(equalTo(1L)));
+    }
+
+    private Object bean() {
+        return bean("instrumentedMethodBean");
+    }
+
+    private Object bean(String name) {
+        Bean<?> bean = manager.resolve(manager.getBeans(name));
+        return manager.getReference(bean, bean.getBeanClass(), manager.createCreationalContext(bean));
+    }
+
+    private static Object invoke(Object bean, String method, Class<?> parameter, Object argument) throws Exception {
+        if (parameter == null)
+            return bean.getClass().getMethod(method).invoke(bean);
+        return bean.getClass().getMethod(method, parameter).invoke(bean, argument);
+    }
+
+    private static byte[] woven(Class<?> bean, String woven) throws IOException {
+        String original = bean.getName().replace('.', '/');
+        ClassWriter writer = new ClassWriter(0);
+        try (InputStream stream = bean.getResourceAsStream(bean.getSimpleName() + ".class")) {
+            new ClassReader(stream).accept(new ClassRemapper(writer, new SimpleRemapper(original, woven)), 0);
+        }
+        return new MetricsTransformer(Collections.emptyList()).transform(bean.getClassLoader(), woven, null, null, writer.toByteArray());
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.health.HealthCheckRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class LazyHealthCheckBeanTest {
+
+    @Deployment
+    public static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(LazyHealthCheckBean.class)
+            // Metrics CDI Extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private HealthCheckRegistry registry;
+
+    @Test
+    @InSequence(1)
+    public void healthCheckNotInstantiatedYet() {
+        assertThat("Health check is not registered correctly", registry.getNames(), contains("lazyHealthCheck"));
+        assertThat("Health check is instantiated eagerly", LazyHealthCheckBean.INSTANCES.get(), is(0));
+    }
+
+    @Test
+    @InSequence(2)
+    public void healthCheckInstantiatedOnce() {
+        assertThat("Health check did not pass", registry.runHealthCheck("lazyHealthCheck").isHealthy(), is(true));
+        assertThat("Health check is not instantiated on first execution", LazyHealthCheckBean.INSTANCES.get(), is(1));
+
+        registry.runHealthCheck("lazyHealthCheck");
+        assertThat("Health check is instantiated on every execution", LazyHealthCheckBean.INSTANCES.get(), is(1));
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.annotation.Metric;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class MappedMetricsTest {
+
+    private final static String COUNTER_NAME = "persistentCounter";
+
+    private final static String TRUNCATED_COUNTER_NAME = COUNTER_NAME + ".withALongNameThatDoesNotFitInASlotOfTheMappedFileAndGetsTruncatedOnACharacterBoundary";
+
+    // Longer than the 112 bytes of a slot, with the 104th byte in the middle of a two-byte character
+    private final static String LONG_COUNTER_NAME = TRUNCATED_COUNTER_NAME + "\u00e9\u00e9\u00e9\u00e9\u00e9";
+
+    private final static String METER_NAME = MetricRegistry.name(MeteredMethodBean.class, "meteredMethod");
+
+    private final static Path FILE = previousRun();
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(MeteredMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.mappedMetrics(FILE);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    @Metric(name = COUNTER_NAME, absolute = true)
+    private Counter counter;
+
+    @Inject
+    @Metric(name = LONG_COUNTER_NAME, absolute = true)
+    private Counter longCounter;
+
+    @Inject
+    private MeteredMethodBean bean;
+
+    @Test
+    @InSequence(1)
+    public void restoreCounterFromPreviousRun() throws IOException {
+        assertThat("Counter count is not restored", counter.getCount(), is(equalTo(5L)));
+
+        counter.inc(2);
+
+        assertThat("Counter count is incorrect", registry.getCounters().get(COUNTER_NAME).getCount(), is(equalTo(7L)));
+        assertThat("Mapped counter count is incorrect", count(COUNTER_NAME, 1), is(equalTo(7L)));
+    }
+
+    @Test
+    @InSequence(2)
+    public void restoreLongNamedCounterFromPreviousRun() throws IOException {
+        assertThat("Counter count is not restored", longCounter.getCount(), is(equalTo(3L)));
+
+        longCounter.inc();
+
+        assertThat("Mapped counter count is incorrect", count(LONG_COUNTER_NAME, 1), is(equalTo(4L)));
+        assertThat("Mapped counter name is not truncated on a character boundary", name(1), is(equalTo(TRUNCATED_COUNTER_NAME)));
+    }
+
+    @Test
+    @InSequence(3)
+    public void storeMeterCount() throws IOException {
+        bean.meteredMethod();
+        bean.meteredMethod();
+
+        assertThat("Meter count is incorrect", registry.getMeters().get(METER_NAME).getCount(), is(equalTo(2L)));
+        assertThat("Mapped meter count is incorrect", count(METER_NAME, 2), is(equalTo(2L)));
+        assertThat("Restored slots are not reused", map(FILE).getInt(16), is(equalTo(3)));
+    }
+
+    // Reads the file as an external tool would, returns -1 if the metric is not found
+    private static long count(String name, int type) throws IOException {
+        ByteBuffer buffer = map(FILE);
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        for (int slot = 0; slot < buffer.getInt(16); slot++) {
+            int offset = 64 + slot * 128;
+            if (buffer.getInt(offset) != type || buffer.getInt(offset + 4) != bytes.length)
+                continue;
+            if (bytes.length > 112 ? buffer.getLong(offset + 112) == hash(bytes) : name(slot).equals(name))
+                return buffer.getLong(offset + 120);
+        }
+        return -1L;
+    }
+
+    // Returns the name stored in the given slot, which is truncated for the names longer than 112 bytes
+    private static String name(int slot) throws IOException {
+        ByteBuffer buffer = map(FILE);
+        int offset = 64 + slot * 128;
+        int length = Math.min(buffer.getInt(offset + 4), 112);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < length && buffer.get(offset + 8 + i) != 0; i++)
+            bytes.write(buffer.get(offset + 8 + i));
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Writes the file as left by a previous run with the counter count at 5 and the long named counter count at 3
+    private static Path previousRun() {
+        try {
+            Path file = Files.createTempFile("metrics", ".map");
+            file.toFile().deleteOnExit();
+            ByteBuffer buffer = ByteBuffer.allocate(64 + 2 * 128).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, 0x4d434443).putInt(4, 2).putInt(8, 4096).putInt(12, 128).putInt(16, 2);
+            byte[] name = COUNTER_NAME.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(64, 1).putInt(68, name.length).putLong(64 + 120, 5L);
+            for (int i = 0; i < name.length; i++)
+                buffer.put(72 + i, name[i]);
+            // The name is truncated to 103 bytes, as the 104th byte starts a two-byte character, followed by the hash of the full name
+            name = LONG_COUNTER_NAME.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(192, 1).putInt(196, name.length).putLong(192 + 112, hash(name)).putLong(192 + 120, 3L);
+            for (int i = 0; i < 103; i++)
+                buffer.put(200 + i, name[i]);
+            Files.write(file, buffer.array());
+            return file;
+        } catch (IOException cause) {
+            throw new UncheckedIOException(cause);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+}
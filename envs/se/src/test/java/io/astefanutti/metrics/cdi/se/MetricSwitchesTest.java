@@ -0,0 +1,103 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricSwitchesMBean;
+import io.astefanutti.metrics.cdi.MetricsConfiguration;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class MetricSwitchesTest {
+
+    private final static String TIMER_NAME = MetricRegistry.name(TimedMethodBean.class, "timedMethod");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(TimedMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    static void configuration(@Observes MetricsConfiguration configuration) {
+        configuration.disabledMetrics("*.TimedMethodBean.*");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private TimedMethodBean bean;
+
+    private MetricSwitchesMBean switches() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = server.queryNames(new ObjectName("io.astefanutti.metrics.cdi:type=MetricSwitches,*"), null);
+        assertThat("Metric switches MBean is not registered", names, hasSize(1));
+        return JMX.newMBeanProxy(server, names.iterator().next(), MetricSwitchesMBean.class);
+    }
+
+    @Test
+    @InSequence(1)
+    public void callDisabledTimedMethod() throws Exception {
+        bean.timedMethod();
+        assertThat("Disabled timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(0L)));
+        assertThat("Disabled patterns are incorrect", switches().getDisabledPatterns(), arrayContaining("*.TimedMethodBean.*"));
+    }
+
+    @Test
+    @InSequence(2)
+    public void enableTimerAtRuntime() throws Exception {
+        switches().enable("*.TimedMethodBean.*");
+        bean.timedMethod();
+        assertThat("Enabled timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    @InSequence(3)
+    public void disableTimerAtRuntime() throws Exception {
+        switches().disable(TIMER_NAME);
+        assertThat("Timer is not disabled", switches().isEnabled(TIMER_NAME), is(equalTo(false)));
+        bean.timedMethod();
+        assertThat("Disabled timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(1L)));
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import io.astefanutti.metrics.cdi.se.util.MetricsUtil;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class PatternInstrumentationTest {
+
+    private static final String TYPES = "io.astefanutti.metrics.cdi.instrumentation.types";
+
+    private static final String TIMER_NAME = MetricsUtil.absoluteMetricName(PatternInstrumentedBean.class, "publicMethod");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        // The instrumentation rules are read when the deployment starts
+        System.setProperty(TYPES, "*.PatternInstrumentedBean");
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(PatternInstrumentedBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @AfterClass
+    public static void clearInstrumentationRules() {
+        System.clearProperty(TYPES);
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private PatternInstrumentedBean bean;
+
+    @Test
+    public void timeMatchingPublicMethods() {
+        bean.publicMethod();
+
+        assertThat("Metrics are not registered correctly", registry.getMetrics().keySet(), is(equalTo(Collections.singleton(TIMER_NAME))));
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(1L)));
+    }
+}
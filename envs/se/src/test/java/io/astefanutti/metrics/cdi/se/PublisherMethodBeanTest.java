@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.astefanutti.metrics.cdi.se.util.MetricsUtil.absoluteMetricName;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class PublisherMethodBeanTest {
+
+    private static final String TIMER_NAME = absoluteMetricName(PublisherMethodBean.class, "publisherTimer");
+
+    private static final String METER_NAME = absoluteMetricName(PublisherMethodBean.class, "publisherMeter");
+
+    private static final String FAILING_TIMER_NAME = absoluteMetricName(PublisherMethodBean.class, "failingPublisherTimer");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(PublisherMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private PublisherMethodBean bean;
+
+    @Test
+    @InSequence(1)
+    public void subscriptionsAreTimedRatherThanAssembly() {
+        Flow.Publisher<Integer> publisher = bean.range(3);
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(0L)));
+        assertThat("Meter count is incorrect", registry.getMeters().get(METER_NAME).getCount(), is(equalTo(1L)));
+
+        AtomicInteger received = subscribe(publisher, Long.MAX_VALUE, false);
+
+        assertThat("Received items count is incorrect", received.get(), is(equalTo(3)));
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(1L)));
+        assertThat("First item timer count is incorrect", registry.getTimers().get(MetricRegistry.name(TIMER_NAME, "first-item")).getCount(), is(equalTo(1L)));
+        assertThat("Items meter count is incorrect", registry.getMeters().get(MetricRegistry.name(METER_NAME, "items")).getCount(), is(equalTo(3L)));
+        assertThat("Timed items meter count is incorrect", registry.getMeters().get(MetricRegistry.name(TIMER_NAME, "items")).getCount(), is(equalTo(3L)));
+        assertThat("Cancellations count is incorrect", registry.getCounters().get(MetricRegistry.name(TIMER_NAME, "cancellations")).getCount(), is(equalTo(0L)));
+        assertThat("Errors count is incorrect", registry.getCounters().get(MetricRegistry.name(TIMER_NAME, "errors")).getCount(), is(equalTo(0L)));
+    }
+
+    @Test
+    @InSequence(2)
+    public void cancelledSubscriptionsAreCounted() {
+        AtomicInteger received = subscribe(bean.range(10), 2, true);
+
+        assertThat("Received items count is incorrect", received.get(), is(equalTo(2)));
+        assertThat("Cancellations count is incorrect", registry.getCounters().get(MetricRegistry.name(TIMER_NAME, "cancellations")).getCount(), is(equalTo(1L)));
+        assertThat("Items meter count is incorrect", registry.getMeters().get(MetricRegistry.name(METER_NAME, "items")).getCount(), is(equalTo(5L)));
+        assertThat("Timed items meter count is incorrect", registry.getMeters().get(MetricRegistry.name(TIMER_NAME, "items")).getCount(), is(equalTo(5L)));
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(2L)));
+    }
+
+    @Test
+    @InSequence(3)
+    public void failedSubscriptionsAreCounted() {
+        subscribe(bean.failing(), 1, false);
+
+        assertThat("Timer count is incorrect", registry.getTimers().get(FAILING_TIMER_NAME).getCount(), is(equalTo(1L)));
+        assertThat("Errors count is incorrect", registry.getCounters().get(MetricRegistry.name(FAILING_TIMER_NAME, "errors")).getCount(), is(equalTo(1L)));
+    }
+
+    private static AtomicInteger subscribe(Flow.Publisher<Integer> publisher, long request, boolean cancel) {
+        AtomicInteger received = new AtomicInteger();
+        publisher.subscribe(new Flow.Subscriber<Integer>() {
+
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(request);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                if (received.incrementAndGet() == request && cancel)
+                    subscription.cancel();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return received;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class ScheduledHealthCheckBeanTest {
+
+    @Deployment
+    public static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(ScheduledHealthCheckBean.class)
+            // Metrics CDI Extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private HealthCheckRegistry registry;
+
+    @Inject
+    private ScheduledHealthCheckBean bean;
+
+    @Test
+    @InSequence(1)
+    public void healthCheckRegistered() {
+        assertThat("Health check is not registered correctly", registry.getNames(), contains("scheduledHealthCheck"));
+    }
+
+    @Test
+    @InSequence(2)
+    public void healthCheckExecutedInBackground() throws InterruptedException {
+        // The first execution is scheduled immediately after deployment, its result is published once it completes
+        long deadline = System.currentTimeMillis() + 5000L;
+        HealthCheck.Result result = registry.runHealthCheck("scheduledHealthCheck");
+        while (!result.isHealthy() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+            result = registry.runHealthCheck("scheduledHealthCheck");
+        }
+
+        assertThat("Health check result is not published", result.isHealthy(), is(true));
+        assertThat("Health check is not executed in the background", bean.getCheckCount(), is(1L));
+    }
+
+    @Test
+    @InSequence(3)
+    public void healthCheckResultCached() {
+        HealthCheck.Result result = registry.runHealthCheck("scheduledHealthCheck");
+        assertThat("Health check result is not healthy", result.isHealthy(), is(true));
+        assertThat("Health check result duration is missing", result.getDetails(), hasKey("duration"));
+
+        registry.runHealthCheck("scheduledHealthCheck");
+        assertThat("Health check is executed on every call", bean.getCheckCount(), is(1L));
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static io.astefanutti.metrics.cdi.se.util.MetricsUtil.absoluteMetricName;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class StreamMethodBeanTest {
+
+    private static final String TIMER_NAME = absoluteMetricName(StreamMethodBean.class, "streamTimer");
+
+    private static final String METER_NAME = absoluteMetricName(StreamMethodBean.class, "streamMeter");
+
+    private static final String INT_TIMER_NAME = absoluteMetricName(StreamMethodBean.class, "intStreamTimer");
+
+    private static final String PLAIN_TIMER_NAME = absoluteMetricName(StreamMethodBean.class, "plainStreamTimer");
+
+    private static final String PLAIN_METER_NAME = absoluteMetricName(StreamMethodBean.class, "plainStreamMeter");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(StreamMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private StreamMethodBean bean;
+
+    @Test
+    @InSequence(1)
+    public void streamsAreTimedUntilClosed() {
+        List<String> elements;
+        try (Stream<String> stream = bean.stream("foo", "bar", "baz")) {
+            assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(1L)));
+            assertThat("Meter count is incorrect", registry.getMeters().get(METER_NAME).getCount(), is(equalTo(1L)));
+            assertThat("Consumption timer count is incorrect", registry.getTimers().get(MetricRegistry.name(TIMER_NAME, "consumption")).getCount(), is(equalTo(0L)));
+            elements = stream.map(String::toUpperCase).collect(Collectors.toList());
+        }
+
+        assertThat("Stream elements are incorrect", elements, contains("FOO", "BAR", "BAZ"));
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(1L)));
+        assertThat("Consumption timer count is incorrect", registry.getTimers().get(MetricRegistry.name(TIMER_NAME, "consumption")).getCount(), is(equalTo(1L)));
+        assertThat("Elements histogram count is incorrect", registry.getHistograms().get(MetricRegistry.name(TIMER_NAME, "elements")).getCount(), is(equalTo(1L)));
+        assertThat("Elements histogram value is incorrect", registry.getHistograms().get(MetricRegistry.name(TIMER_NAME, "elements")).getSnapshot().getMax(), is(equalTo(3L)));
+        assertThat("Items meter count is incorrect", registry.getMeters().get(MetricRegistry.name(METER_NAME, "items")).getCount(), is(equalTo(3L)));
+    }
+
+    @Test
+    @InSequence(2)
+    public void primitiveStreamsAreTimedUntilClosed() {
+        int sum;
+        try (IntStream stream = bean.range(5)) {
+            sum = stream.filter(i -> i % 2 == 0).sum();
+        }
+
+        assertThat("Stream sum is incorrect", sum, is(equalTo(6)));
+        assertThat("Timer count is incorrect", registry.getTimers().get(INT_TIMER_NAME).getCount(), is(equalTo(1L)));
+        assertThat("Consumption timer count is incorrect", registry.getTimers().get(MetricRegistry.name(INT_TIMER_NAME, "consumption")).getCount(), is(equalTo(1L)));
+        assertThat("Elements histogram value is incorrect", registry.getHistograms().get(MetricRegistry.name(INT_TIMER_NAME, "elements")).getSnapshot().getMax(), is(equalTo(5L)));
+    }
+
+    @Test
+    @InSequence(3)
+    public void sizedStreamsElementsAreCounted() {
+        long count;
+        try (Stream<String> stream = bean.stream("foo", "bar", "baz", "qux")) {
+            count = stream.count();
+        }
+
+        assertThat("Stream count is incorrect", count, is(equalTo(4L)));
+        assertThat("Elements histogram value is incorrect", registry.getHistograms().get(MetricRegistry.name(TIMER_NAME, "elements")).getSnapshot().getMax(), is(equalTo(4L)));
+        assertThat("Items meter count is incorrect", registry.getMeters().get(MetricRegistry.name(METER_NAME, "items")).getCount(), is(equalTo(7L)));
+    }
+
+    @Test
+    @InSequence(4)
+    public void unclosedStreamsInvocationsAreMeasured() {
+        List<String> elements = bean.stream("foo", "bar").collect(Collectors.toList());
+
+        assertThat("Stream elements are incorrect", elements, contains("foo", "bar"));
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(3L)));
+        assertThat("Meter count is incorrect", registry.getMeters().get(METER_NAME).getCount(), is(equalTo(3L)));
+        assertThat("Consumption timer count is incorrect", registry.getTimers().get(MetricRegistry.name(TIMER_NAME, "consumption")).getCount(), is(equalTo(2L)));
+    }
+
+    @Test
+    @InSequence(5)
+    public void streamsAreNotDecoratedByDefault() {
+        Stream<String> stream = bean.plain("foo", "bar");
+
+        assertThat("Stream count is incorrect", stream.count(), is(equalTo(2L)));
+        assertThat("Timer count is incorrect", registry.getTimers().get(PLAIN_TIMER_NAME).getCount(), is(equalTo(1L)));
+        assertThat("Meter count is incorrect", registry.getMeters().get(PLAIN_METER_NAME).getCount(), is(equalTo(1L)));
+        assertThat("Consumption timer is registered", registry.getTimers().containsKey(MetricRegistry.name(PLAIN_TIMER_NAME, "consumption")), is(equalTo(false)));
+        assertThat("Items meter is registered", registry.getMeters().containsKey(MetricRegistry.name(PLAIN_METER_NAME, "items")), is(equalTo(false)));
+    }
+
+    @Test
+    @InSequence(6)
+    public void removedDerivedMetricsAreRegisteredAgain() {
+        registry.remove(MetricRegistry.name(TIMER_NAME, "consumption"));
+        registry.remove(MetricRegistry.name(TIMER_NAME, "elements"));
+        registry.remove(MetricRegistry.name(METER_NAME, "items"));
+
+        try (Stream<String> stream = bean.stream("foo", "bar")) {
+            assertThat("Stream count is incorrect", stream.count(), is(equalTo(2L)));
+        }
+
+        assertThat("Timer count is incorrect", registry.getTimers().get(TIMER_NAME).getCount(), is(equalTo(4L)));
+        assertThat("Consumption timer is not registered again", registry.getTimers(), hasKey(MetricRegistry.name(TIMER_NAME, "consumption")));
+        assertThat("Consumption timer count is incorrect", registry.getTimers().get(MetricRegistry.name(TIMER_NAME, "consumption")).getCount(), is(equalTo(1L)));
+        assertThat("Elements histogram count is incorrect", registry.getHistograms().get(MetricRegistry.name(TIMER_NAME, "elements")).getCount(), is(equalTo(1L)));
+        assertThat("Items meter is not registered again", registry.getMeters(), hasKey(MetricRegistry.name(METER_NAME, "items")));
+        assertThat("Items meter count is incorrect", registry.getMeters().get(MetricRegistry.name(METER_NAME, "items")).getCount(), is(equalTo(2L)));
+    }
+}
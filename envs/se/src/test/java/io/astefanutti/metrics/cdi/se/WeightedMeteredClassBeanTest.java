@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class WeightedMeteredClassBeanTest {
+
+    private static final String FETCH_NAME = MetricRegistry.name("weightedMeteredClass", "fetch");
+
+    private static final String SIZE_NAME = MetricRegistry.name("weightedMeteredClass", "size");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(WeightedMeteredClassBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private WeightedMeteredClassBean bean;
+
+    @Test
+    public void voidMethodsAreNotMetered() {
+        bean.fetch(5);
+        bean.size();
+        bean.reset();
+
+        assertThat("Void method is not invoked", bean.getResets(), is(equalTo(1L)));
+        assertThat("Meters are not registered correctly", registry.getMeters().keySet(), is(equalTo(new HashSet<>(Arrays.asList(FETCH_NAME, SIZE_NAME, MetricRegistry.name("weightedMeteredClass", "getResets"))))));
+        assertThat("Fetch meter count is incorrect", registry.getMeters().get(FETCH_NAME).getCount(), is(equalTo(5L)));
+        assertThat("Size meter count is incorrect", registry.getMeters().get(SIZE_NAME).getCount(), is(equalTo(3L)));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.se;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import io.astefanutti.metrics.cdi.MetricsExtension;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static io.astefanutti.metrics.cdi.se.util.MetricsUtil.absoluteMetricName;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(Arquillian.class)
+public class WeightedMeteredMethodBeanTest {
+
+    private static final String INGEST_NAME = absoluteMetricName(WeightedMeteredMethodBean.class, "ingestMeter");
+
+    private static final String FETCH_NAME = absoluteMetricName(WeightedMeteredMethodBean.class, "fetchMeter");
+
+    private static final String BYTES_NAME = absoluteMetricName(WeightedMeteredMethodBean.class, "bytesMeter");
+
+    @Deployment
+    static Archive<?> createTestArchive() {
+        return ShrinkWrap.create(JavaArchive.class)
+            // Test bean
+            .addClass(WeightedMeteredMethodBean.class)
+            // Metrics CDI extension
+            .addPackage(MetricsExtension.class.getPackage())
+            // Bean archive deployment descriptor
+            .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
+    }
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private WeightedMeteredMethodBean bean;
+
+    @Test
+    public void metersAreMarkedByWeight() {
+        bean.ingest("foo", Arrays.asList("a", "b", "c"));
+        bean.ingest("bar", Collections.singletonList("d"));
+        bean.ingest("baz", null);
+        bean.fetch(5);
+        bean.write(new byte[42]);
+
+        assertThat("Meters are not registered correctly", registry.getMeters().keySet(), is(equalTo(new HashSet<>(Arrays.asList(INGEST_NAME, FETCH_NAME, BYTES_NAME)))));
+        assertThat("Ingest meter count is incorrect", registry.getMeters().get(INGEST_NAME).getCount(), is(equalTo(4L)));
+        assertThat("Fetch meter count is incorrect", registry.getMeters().get(FETCH_NAME).getCount(), is(equalTo(5L)));
+        assertThat("Bytes meter count is incorrect", registry.getMeters().get(BYTES_NAME).getCount(), is(equalTo(42L)));
+
+        Histogram sizes = registry.getHistograms().get(MetricRegistry.name(INGEST_NAME, "sizes"));
+        assertThat("Sizes histogram count is incorrect", sizes.getCount(), is(equalTo(2L)));
+        assertThat("Sizes histogram max is incorrect", sizes.getSnapshot().getMax(), is(equalTo(3L)));
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Byte buffer that writes numbers and ASCII strings without intermediate allocations, either growing to be reused across
+// encodings or flushing its content to a sink once full
+/* package-private */ final class AsciiBuffer {
+
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+
+    private int size;
+
+    private final OutputStream sink;
+
+    AsciiBuffer(int capacity) {
+        this(capacity, null);
+    }
+
+    AsciiBuffer(int capacity, OutputStream sink) {
+        this.bytes = new byte[capacity];
+        this.sink = sink;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    AsciiBuffer write(byte value) {
+        ensure(1);
+        bytes[size++] = value;
+        return this;
+    }
+
+    AsciiBuffer write(byte[] value) {
+        ensure(value.length);
+        System.arraycopy(value, 0, bytes, size, value.length);
+        size += value.length;
+        return this;
+    }
+
+    // Falls back to UTF-8 encoding for the strings that are not ASCII
+    AsciiBuffer write(String value) {
+        int length = value.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                size -= i;
+                return write(value.getBytes(StandardCharsets.UTF_8));
+            }
+            bytes[size++] = (byte) c;
+        }
+        return this;
+    }
+
+    AsciiBuffer write(long value) {
+        if (value == Long.MIN_VALUE)
+            return write(MIN_LONG);
+        ensure(20);
+        if (value < 0) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long bound = 10; digits < 19 && value >= bound; bound *= 10)
+            digits++;
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    // Integral values are written without the fractional part
+    AsciiBuffer write(double value) {
+        if (value == (long) value && Math.abs(value) < 1e15)
+            return write((long) value);
+        return write(Double.toString(value));
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    void writeTo(OutputStream output) throws IOException {
+        output.write(bytes, 0, size);
+    }
+
+    void writeTo(ByteBuffer output) {
+        output.put(bytes, 0, size);
+    }
+
+    void flush() throws IOException {
+        if (sink == null)
+            return;
+        writeTo(sink);
+        size = 0;
+    }
+
+    private void ensure(int length) {
+        if (size + length <= bytes.length)
+            return;
+        if (sink != null) {
+            try {
+                flush();
+            } catch (IOException cause) {
+                throw new UncheckedIOException(cause);
+            }
+        }
+        if (size + length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+    }
+}
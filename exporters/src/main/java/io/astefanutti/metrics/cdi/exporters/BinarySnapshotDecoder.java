@@ -0,0 +1,191 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the sessions encoded by a {@link BinarySnapshotEncoder}, one frame at a time, into the callbacks of a {@link Handler}.
+ * <p>
+ * The histogram and timer snapshots only know the quantiles that have been encoded and interpolate linearly between them
+ * for the other quantiles. Decoders are not thread-safe.
+ *
+ * @since 1.7.0
+ */
+public class BinarySnapshotDecoder {
+
+    private final InputStream input;
+
+    private final List<String> names = new ArrayList<>();
+
+    // The previous counts by name index
+    private long[] counts = new long[64];
+
+    private long time;
+
+    /**
+     * @param input the stream the session gets decoded from
+     */
+    public BinarySnapshotDecoder(InputStream input) {
+        this.input = new BufferedInputStream(input);
+    }
+
+    /**
+     * Decodes the next frame of the session.
+     *
+     * @param handler the handler notified of the frame metrics
+     * @return {@code false} if the end of the session has been reached, {@code true} otherwise
+     * @throws IOException if the frame cannot be read or is not a valid frame
+     */
+    public boolean decode(Handler handler) throws IOException {
+        if (time == 0L) {
+            int magic = input.read();
+            if (magic < 0)
+                return false;
+            magic = magic << 24 | byteOf() << 16 | byteOf() << 8 | byteOf();
+            if (magic != BinarySnapshotEncoder.MAGIC)
+                throw new IOException("Invalid snapshot magic number [" + Integer.toHexString(magic) + "]");
+            int version = byteOf();
+            if (version != BinarySnapshotEncoder.VERSION)
+                throw new IOException("Unsupported snapshot version [" + version + "]");
+        } else {
+            input.mark(1);
+            if (input.read() < 0)
+                return false;
+            input.reset();
+        }
+
+        time += varint();
+        handler.time(time);
+
+        for (long added = varint(); added > 0; added--) {
+            byte[] name = new byte[(int) varint()];
+            for (int i = 0; i < name.length; i++)
+                name[i] = (byte) byteOf();
+            names.add(new String(name, StandardCharsets.UTF_8));
+        }
+        if (names.size() > counts.length)
+            counts = Arrays.copyOf(counts, Math.max(counts.length * 2, names.size()));
+
+        for (int index = (int) varint(); index > 0; index = (int) varint()) {
+            if (index > names.size())
+                throw new IOException("Invalid snapshot name index [" + index + "]");
+            String name = names.get(index - 1);
+            int type = byteOf();
+            switch (type) {
+                case BinarySnapshotEncoder.LONG_GAUGE:
+                    handler.gauge(name, unzigzag(varint()));
+                    break;
+                case BinarySnapshotEncoder.DOUBLE_GAUGE:
+                    handler.gauge(name, Double.longBitsToDouble((long) int32() << 32 | int32() & 0xFFFFFFFFL));
+                    break;
+                case BinarySnapshotEncoder.COUNTER:
+                    handler.counter(name, count(index));
+                    break;
+                case BinarySnapshotEncoder.HISTOGRAM:
+                    handler.histogram(name, count(index), snapshot());
+                    break;
+                case BinarySnapshotEncoder.METER:
+                    handler.meter(name, count(index), rate(), rate(), rate(), rate());
+                    break;
+                case BinarySnapshotEncoder.TIMER:
+                    handler.timer(name, count(index), snapshot(), rate(), rate(), rate(), rate());
+                    break;
+                default:
+                    throw new IOException("Invalid snapshot metric type [" + type + "]");
+            }
+        }
+        return true;
+    }
+
+    private long count(int index) throws IOException {
+        return counts[index - 1] += unzigzag(varint());
+    }
+
+    private Snapshot snapshot() throws IOException {
+        long[] quantiles = new long[BinarySnapshotEncoder.QUANTILES.length];
+        quantiles[0] = unzigzag(varint());
+        for (int i = 1; i < quantiles.length; i++)
+            quantiles[i] = quantiles[i - 1] + varint();
+        return new SummarySnapshot(quantiles, Float.intBitsToFloat(int32()), Float.intBitsToFloat(int32()));
+    }
+
+    private double rate() throws IOException {
+        return Float.intBitsToFloat(int32());
+    }
+
+    private long varint() throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = byteOf();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Invalid snapshot variable-length integer");
+    }
+
+    private int int32() throws IOException {
+        return byteOf() << 24 | byteOf() << 16 | byteOf() << 8 | byteOf();
+    }
+
+    private int byteOf() throws IOException {
+        int b = input.read();
+        if (b < 0)
+            throw new EOFException("Truncated snapshot frame");
+        return b;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Receives the metrics of the decoded frames. The timer snapshots are in nanoseconds and the rates are per second.
+     */
+    public interface Handler {
+
+        /**
+         * @param time the time the frame was encoded at, in milliseconds since the epoch
+         */
+        default void time(long time) {
+        }
+
+        default void gauge(String name, Number value) {
+        }
+
+        default void counter(String name, long count) {
+        }
+
+        default void histogram(String name, long count, Snapshot snapshot) {
+        }
+
+        default void meter(String name, long count, double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate, double meanRate) {
+        }
+
+        default void timer(String name, long count, Snapshot snapshot, double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate, double meanRate) {
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes snapshots of the metrics of a {@link com.codahale.metrics.MetricRegistry} into a compact binary stream, to be
+ * decoded with a {@link BinarySnapshotDecoder}.
+ * <p>
+ * An encoder holds the state of a session, that starts with the magic number {@value #MAGIC} and the format version,
+ * {@value #VERSION}, followed by one frame per snapshot. Each metric name is only sent in the first frame that contains
+ * it and gets referred to by its index in the following frames. Integers are encoded as variable-length integers, signed
+ * ones with zig-zag encoding, the counts as the difference with the previous count of the same metric in the session,
+ * and the quantiles of the histograms and timers as the differences with the previous quantile. Frames are made of:
+ * <pre>
+ * varint              the time in milliseconds, since the epoch for the first frame and since the previous frame afterwards
+ * varint              the number of new names, each encoded as its UTF-8 length as a varint followed by its UTF-8 bytes
+ * varint...           the metrics, each encoded as its name index plus one as a varint, its type as a byte and its value, terminated by 0
+ * </pre>
+ * where the values, depending on the type, are:
+ * <pre>
+ * {@value #LONG_GAUGE}   integral gauge         zig-zag varint value
+ * {@value #DOUBLE_GAUGE}   numeric gauge          8 bytes double value
+ * {@value #COUNTER}   counter                zig-zag varint count difference
+ * {@value #HISTOGRAM}   histogram              zig-zag varint count difference, zig-zag varint min, varint differences of the median, 75th, 95th,
+ *                            98th, 99th, 99.9th percentiles and max with their previous quantile, 4 bytes floats mean and standard deviation
+ * {@value #METER}   meter                  zig-zag varint count difference, 4 bytes floats one, five, fifteen minutes and mean rates
+ * {@value #TIMER}   timer                  histogram value in nanoseconds followed by the meter rates
+ * </pre>
+ * The snapshots carry the same summary statistics as the JSON encoding, rather than the reservoir values that take several
+ * times its size, with the quantiles rounded to the nearest integer. Non-numeric gauges are not encoded. Encoders are not
+ * thread-safe.
+ *
+ * @since 1.7.0
+ */
+public class BinarySnapshotEncoder {
+
+    public static final int MAGIC = 0x4d434442;
+
+    public static final int VERSION = 1;
+
+    static final byte LONG_GAUGE = 1;
+
+    static final byte DOUBLE_GAUGE = 2;
+
+    static final byte COUNTER = 3;
+
+    static final byte HISTOGRAM = 4;
+
+    static final byte METER = 5;
+
+    static final byte TIMER = 6;
+
+    // The quantiles of the encoded snapshots, from the min to the max
+    static final double[] QUANTILES = {0.0, 0.5, 0.75, 0.95, 0.98, 0.99, 0.999, 1.0};
+
+    private final AsciiBuffer buffer;
+
+    private final Map<String, Integer> names = new HashMap<>();
+
+    // The previous counts by name index
+    private long[] counts = new long[64];
+
+    private long time;
+
+    /**
+     * @param output the stream the session gets encoded into
+     */
+    public BinarySnapshotEncoder(OutputStream output) {
+        this.buffer = new AsciiBuffer(8192, output);
+    }
+
+    /**
+     * Encodes a frame with the given metrics, typically {@link com.codahale.metrics.MetricRegistry#getMetrics()}, and flushes it to the output stream.
+     *
+     * @param metrics the metrics by name
+     * @throws IOException if the frame cannot be written
+     */
+    public void encode(Map<String, Metric> metrics) throws IOException {
+        try {
+            if (time == 0L)
+                int32(MAGIC).write((byte) VERSION);
+
+            long now = System.currentTimeMillis();
+            varint(now - time);
+            time = now;
+
+            int added = 0;
+            for (String name : metrics.keySet())
+                if (!names.containsKey(name))
+                    added++;
+            varint(added);
+            for (String name : metrics.keySet()) {
+                if (!names.containsKey(name)) {
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    varint(bytes.length);
+                    buffer.write(bytes);
+                    names.put(name, names.size());
+                }
+            }
+            if (names.size() > counts.length)
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, names.size()));
+
+            // The metrics are terminated rather than counted upfront so that the gauges only get evaluated once
+            for (Map.Entry<String, Metric> entry : metrics.entrySet())
+                metric(names.get(entry.getKey()) + 1, entry.getValue());
+            varint(0);
+
+            buffer.flush();
+        } catch (UncheckedIOException cause) {
+            throw cause.getCause();
+        }
+    }
+
+    private void metric(int index, Metric metric) {
+        if (metric instanceof Gauge) {
+            Object value = ((Gauge<?>) metric).getValue();
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                varint(index);
+                buffer.write(LONG_GAUGE);
+                varint(zigzag(((Number) value).longValue()));
+            } else if (value instanceof Number) {
+                varint(index);
+                buffer.write(DOUBLE_GAUGE);
+                int64(Double.doubleToLongBits(((Number) value).doubleValue()));
+            }
+        } else if (metric instanceof Counter) {
+            varint(index);
+            buffer.write(COUNTER);
+            count(index, ((Counter) metric).getCount());
+        } else if (metric instanceof Histogram) {
+            varint(index);
+            buffer.write(HISTOGRAM);
+            count(index, ((Histogram) metric).getCount());
+            snapshot(((Histogram) metric).getSnapshot());
+        } else if (metric instanceof Meter) {
+            varint(index);
+            buffer.write(METER);
+            count(index, ((Meter) metric).getCount());
+            rates((Meter) metric);
+        } else if (metric instanceof Timer) {
+            varint(index);
+            buffer.write(TIMER);
+            count(index, ((Timer) metric).getCount());
+            snapshot(((Timer) metric).getSnapshot());
+            rates((Timer) metric);
+        }
+    }
+
+    private void count(int index, long count) {
+        varint(zigzag(count - counts[index - 1]));
+        counts[index - 1] = count;
+    }
+
+    // The quantiles are non-decreasing so that their differences are encoded unsigned
+    private void snapshot(Snapshot snapshot) {
+        long previous = snapshot.getMin();
+        varint(zigzag(previous));
+        for (int i = 1; i < QUANTILES.length - 1; i++)
+            previous = quantile(previous, Math.round(snapshot.getValue(QUANTILES[i])));
+        quantile(previous, snapshot.getMax());
+        int32(Float.floatToIntBits((float) snapshot.getMean()));
+        int32(Float.floatToIntBits((float) snapshot.getStdDev()));
+    }
+
+    private long quantile(long previous, long value) {
+        // Guards against snapshots interpolating their quantiles out of order
+        value = Math.max(previous, value);
+        varint(value - previous);
+        return value;
+    }
+
+    // The rates are encoded in single precision which is enough for exponentially weighted moving averages
+    private void rates(Metered metered) {
+        int32(Float.floatToIntBits((float) metered.getOneMinuteRate()));
+        int32(Float.floatToIntBits((float) metered.getFiveMinuteRate()));
+        int32(Float.floatToIntBits((float) metered.getFifteenMinuteRate()));
+        int32(Float.floatToIntBits((float) metered.getMeanRate()));
+    }
+
+    private void varint(long value) {
+        while ((value & ~0x7FL) != 0L) {
+            buffer.write((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.write((byte) value);
+    }
+
+    private AsciiBuffer int32(int value) {
+        return buffer.write((byte) (value >>> 24)).write((byte) (value >>> 16)).write((byte) (value >>> 8)).write((byte) value);
+    }
+
+    private void int64(long value) {
+        int32((int) (value >>> 32));
+        int32((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
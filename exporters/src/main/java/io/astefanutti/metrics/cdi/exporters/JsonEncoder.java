@@ -0,0 +1,272 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Sampling;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Writes the metrics in the Dropwizard Metrics JSON layout directly into a buffer, without building any intermediate object model
+/* package-private */ final class JsonEncoder {
+
+    private static final byte[] VERSION = ascii("{\"version\":\"4.0.0\",");
+
+    private static final byte[] GAUGES = ascii("\"gauges\":{");
+
+    private static final byte[] COUNTERS = ascii(",\"counters\":{");
+
+    private static final byte[] HISTOGRAMS = ascii(",\"histograms\":{");
+
+    private static final byte[] METERS = ascii(",\"meters\":{");
+
+    private static final byte[] TIMERS = ascii(",\"timers\":{");
+
+    private static final byte[] VALUE = ascii("{\"value\":");
+
+    private static final byte[] COUNT = ascii("{\"count\":");
+
+    private static final byte[][] SNAPSHOT = fields("max", "mean", "min", "p50", "p75", "p95", "p98", "p99", "p999", "stddev");
+
+    private static final byte[][] RATES = fields("m15_rate", "m1_rate", "m5_rate", "mean_rate");
+
+    private static final byte[] RATE_UNITS = ascii(",\"units\":\"events/second\"");
+
+    private static final byte[] DURATION_UNITS = ascii(",\"duration_units\":\"milliseconds\"}");
+
+    private static final double DURATION_FACTOR = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Map<String, Metric> metrics;
+
+    // The gauge values, snapshots and rates are evaluated once so that the fingerprint matches the encoded values
+    private final Map<Gauge<?>, Object> values = new IdentityHashMap<>();
+
+    private final Map<Sampling, double[]> snapshots = new IdentityHashMap<>();
+
+    private final Map<Metered, double[]> rates = new IdentityHashMap<>();
+
+    private AsciiBuffer buffer;
+
+    JsonEncoder(Map<String, Metric> metrics) {
+        this.metrics = metrics;
+    }
+
+    void encode(AsciiBuffer buffer) {
+        this.buffer = buffer;
+        buffer.write(VERSION);
+
+        buffer.write(GAUGES);
+        boolean first = true;
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            if (entry.getValue() instanceof Gauge) {
+                first = name(entry.getKey(), first);
+                buffer.write(VALUE);
+                value(value((Gauge<?>) entry.getValue()));
+                buffer.write((byte) '}');
+            }
+        }
+
+        buffer.write((byte) '}').write(COUNTERS);
+        first = true;
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            if (entry.getValue() instanceof Counter) {
+                first = name(entry.getKey(), first);
+                buffer.write(COUNT).write(((Counter) entry.getValue()).getCount()).write((byte) '}');
+            }
+        }
+
+        buffer.write((byte) '}').write(HISTOGRAMS);
+        first = true;
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            if (entry.getValue() instanceof Histogram) {
+                first = name(entry.getKey(), first);
+                buffer.write(COUNT).write(((Histogram) entry.getValue()).getCount());
+                snapshot(snapshot((Histogram) entry.getValue()), 1);
+                buffer.write((byte) '}');
+            }
+        }
+
+        buffer.write((byte) '}').write(METERS);
+        first = true;
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            if (entry.getValue() instanceof Meter) {
+                first = name(entry.getKey(), first);
+                buffer.write(COUNT).write(((Meter) entry.getValue()).getCount());
+                encodeRates((Meter) entry.getValue());
+                buffer.write((byte) '}');
+            }
+        }
+
+        buffer.write((byte) '}').write(TIMERS);
+        first = true;
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            if (entry.getValue() instanceof Timer) {
+                first = name(entry.getKey(), first);
+                buffer.write(COUNT).write(((Timer) entry.getValue()).getCount());
+                snapshot(snapshot((Timer) entry.getValue()), DURATION_FACTOR);
+                encodeRates((Timer) entry.getValue());
+                buffer.write(DURATION_UNITS);
+            }
+        }
+        buffer.write((byte) '}').write((byte) '}');
+    }
+
+    // Changes whenever a metric gets added or removed, or a count, a gauge value, a snapshot value or a rate changes
+    long fingerprint() {
+        long hash = 1125899906842597L;
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            hash = 31 * hash + entry.getKey().hashCode();
+            Metric metric = entry.getValue();
+            if (metric instanceof Gauge) {
+                Object value = value((Gauge<?>) metric);
+                hash = 31 * hash + (value != null ? value.hashCode() : 0);
+            } else if (metric instanceof Counter) {
+                hash = 31 * hash + ((Counter) metric).getCount();
+            } else if (metric instanceof Histogram) {
+                hash = 31 * hash + ((Histogram) metric).getCount();
+                hash = 31 * hash + Arrays.hashCode(snapshot((Histogram) metric));
+            } else if (metric instanceof Metered) {
+                hash = 31 * hash + ((Metered) metric).getCount();
+                hash = 31 * hash + Arrays.hashCode(rates((Metered) metric));
+                if (metric instanceof Timer)
+                    hash = 31 * hash + Arrays.hashCode(snapshot((Timer) metric));
+            }
+        }
+        return hash;
+    }
+
+    private Object value(Gauge<?> gauge) {
+        if (values.containsKey(gauge))
+            return values.get(gauge);
+        Object value = gauge.getValue();
+        values.put(gauge, value);
+        return value;
+    }
+
+    private double[] snapshot(Sampling sampling) {
+        return snapshots.computeIfAbsent(sampling, metric -> values(sampling.getSnapshot()));
+    }
+
+    private double[] rates(Metered metered) {
+        return rates.computeIfAbsent(metered, metric -> new double[] {metered.getFifteenMinuteRate(), metered.getOneMinuteRate(), metered.getFiveMinuteRate(), metered.getMeanRate()});
+    }
+
+    private static double[] values(Snapshot snapshot) {
+        return new double[] {snapshot.getMax(), snapshot.getMean(), snapshot.getMin(), snapshot.getMedian(), snapshot.get75thPercentile(),
+            snapshot.get95thPercentile(), snapshot.get98thPercentile(), snapshot.get99thPercentile(), snapshot.get999thPercentile(), snapshot.getStdDev()};
+    }
+
+    private boolean name(String name, boolean first) {
+        if (!first)
+            buffer.write((byte) ',');
+        string(name);
+        buffer.write((byte) ':');
+        return false;
+    }
+
+    private void snapshot(double[] values, double factor) {
+        for (int i = 0; i < values.length; i++) {
+            buffer.write(SNAPSHOT[i]);
+            number(values[i] * factor);
+        }
+    }
+
+    private void encodeRates(Metered metered) {
+        double[] values = rates(metered);
+        for (int i = 0; i < values.length; i++) {
+            buffer.write(RATES[i]);
+            number(values[i]);
+        }
+        buffer.write(RATE_UNITS);
+    }
+
+    private void value(Object value) {
+        if (value instanceof Number)
+            number(((Number) value).doubleValue());
+        else if (value instanceof Boolean)
+            buffer.write(value.toString());
+        else if (value != null)
+            string(value.toString());
+        else
+            buffer.write("null");
+    }
+
+    // JSON has no representation for the non-finite numbers
+    private void number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            buffer.write("null");
+        else
+            buffer.write(value);
+    }
+
+    private void string(String value) {
+        buffer.write((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\') {
+                buffer.write((byte) '\\');
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        buffer.write((byte) c);
+                        break;
+                    case '\n':
+                        buffer.write((byte) 'n');
+                        break;
+                    case '\r':
+                        buffer.write((byte) 'r');
+                        break;
+                    case '\t':
+                        buffer.write((byte) 't');
+                        break;
+                    default:
+                        buffer.write(String.format("u%04x", (int) c));
+                }
+            } else if (c < 0x80) {
+                buffer.write((byte) c);
+            } else {
+                // Surrogate pairs get encoded together
+                int end = Character.isHighSurrogate(c) && i + 1 < length ? i + 2 : i + 1;
+                buffer.write(value.substring(i, end).getBytes(StandardCharsets.UTF_8));
+                i = end - 1;
+            }
+        }
+        buffer.write((byte) '"');
+    }
+
+    private static byte[][] fields(String... names) {
+        byte[][] fields = new byte[names.length][];
+        for (int i = 0; i < names.length; i++)
+            fields[i] = ascii(",\"" + names[i] + "\":");
+        return fields;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
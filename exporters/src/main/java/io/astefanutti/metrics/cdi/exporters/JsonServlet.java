@@ -0,0 +1,108 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Exposes the metrics of the CDI {@link MetricRegistry} bean in the Dropwizard Metrics JSON layout.
+ * <p>
+ * The metrics are streamed to the response without any intermediate object model and can be restricted to the metrics
+ * whose names start with the {@code prefix} request parameter, that are selected through an index of the registry.
+ * The responses carry an {@code ETag} derived from the metric names, counts, gauge values, snapshot values and rates, so that
+ * the requests whose {@code If-None-Match} header matches get a {@code 304 Not Modified} response without any content. As the
+ * rates decay over time, the responses that include meters or timers are rarely left unmodified. Each gauge is only evaluated once
+ * per request, so that the {@code ETag} matches the values sent.
+ *
+ * @since 1.7.0
+ */
+public class JsonServlet extends HttpServlet {
+
+    static final String CONTENT_TYPE = "application/json";
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    @Inject
+    private transient MetricRegistry registry;
+
+    private transient MetricIndex index;
+
+    public JsonServlet() {
+    }
+
+    public JsonServlet(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void init() throws ServletException {
+        if (registry == null)
+            throw new ServletException("No metric registry available, make sure that the servlet is injected by the CDI container");
+        index = new MetricIndex(registry);
+    }
+
+    @Override
+    public void destroy() {
+        if (index != null)
+            index.close();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Map<String, Metric> metrics = index.withPrefix(request.getParameter("prefix"));
+
+        JsonEncoder encoder = new JsonEncoder(metrics);
+        String etag = "\"" + Long.toHexString(encoder.fingerprint()) + "\"";
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "no-cache");
+        if (matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        AsciiBuffer buffer = new AsciiBuffer(BUFFER_SIZE, response.getOutputStream());
+        try {
+            encoder.encode(buffer);
+            buffer.flush();
+        } catch (UncheckedIOException cause) {
+            throw cause.getCause();
+        }
+    }
+
+    static boolean matches(String header, String etag) {
+        if (header == null)
+            return false;
+        for (String candidate : header.split(","))
+            if (candidate.trim().equals(etag) || candidate.trim().equals("*"))
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the metrics of a {@link MetricRegistry} into a memory-mapped file with a fixed binary layout, so that
+ * processes running on the same host can read them from the page cache without involving the JVM.
+ * <p>
+ * All the values are little-endian. The file starts with a {@value #HEADER_SIZE} bytes header:
+ * <pre>
+ *  0  int   magic, {@value #MAGIC}
+ *  4  int   layout version, {@value #VERSION}
+ *  8  long  sequence, odd while a report is being written
+ * 16  int   slot capacity
+ * 20  int   slot size, {@value #SLOT_SIZE}
+ * 24  long  last report time, in milliseconds since the epoch
+ * </pre>
+ * followed by the metric slots:
+ * <pre>
+ *  0  int   type, {@value #EMPTY} for an empty slot, {@value #GAUGE}, {@value #COUNTER}, {@value #HISTOGRAM}, {@value #METER} or {@value #TIMER}
+ *  4  int   name length
+ *  8  bytes name, UTF-8 encoded and truncated to {@value #NAME_SIZE} bytes
+ * 72  long  count, or the bits of the gauge value as a double, NaN for non-numeric values and the gauges that fail
+ * 80  double[8] min, max, mean, standard deviation, median, 75th, 95th and 99th percentiles for histograms and timers,
+ *           or one, five, fifteen minutes and mean rates for meters
+ * </pre>
+ * Readers get a consistent view by reading the sequence before and after reading the slots, and retrying when it is odd
+ * or has changed. Each report only writes the fields whose value has changed since the previous report, and the metrics
+ * registered beyond the slot capacity are not reported.
+ *
+ * @since 1.7.0
+ */
+public class MappedFileReporter extends ScheduledReporter {
+
+    public static final int MAGIC = 0x4d434449;
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 64;
+
+    public static final int SLOT_SIZE = 144;
+
+    public static final int NAME_SIZE = 64;
+
+    public static final int EMPTY = 0;
+
+    public static final int GAUGE = 1;
+
+    public static final int COUNTER = 2;
+
+    public static final int HISTOGRAM = 3;
+
+    public static final int METER = 4;
+
+    public static final int TIMER = 5;
+
+    private static final int SEQUENCE = 8;
+
+    private static final int TIME = 24;
+
+    private static final int FIELDS = 9;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    private final Map<String, Slot> slots = new HashMap<>();
+
+    private final Deque<Integer> free = new ArrayDeque<>();
+
+    private long sequence;
+
+    private long tick;
+
+    private volatile long fence;
+
+    protected MappedFileReporter(MetricRegistry registry, Path file, int capacity, MetricFilter filter, TimeUnit rateUnit, TimeUnit durationUnit) throws IOException {
+        super(registry, "mapped-file-reporter", filter, rateUnit, durationUnit);
+        this.capacity = capacity;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        // The slots left by a previous run get cleared
+        for (int slot = capacity - 1; slot >= 0; slot--) {
+            buffer.putInt(offset(slot), EMPTY);
+            free.push(slot);
+        }
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(SEQUENCE, sequence).putInt(16, capacity).putInt(20, SLOT_SIZE);
+    }
+
+    public static Builder forRegistry(MetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    @Override
+    public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        tick++;
+        buffer.putLong(SEQUENCE, ++sequence);
+        fence();
+
+        // The sequence must get even again whatever happens, otherwise the readers would accept the torn reports from then on
+        try {
+            for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+                Slot slot = slot(gauge.getKey(), GAUGE);
+                if (slot != null)
+                    slot.write(0, Double.doubleToLongBits(value(gauge.getValue())));
+            }
+            for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+                Slot slot = slot(counter.getKey(), COUNTER);
+                if (slot != null)
+                    slot.write(0, counter.getValue().getCount());
+            }
+            for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+                Slot slot = slot(histogram.getKey(), HISTOGRAM);
+                // The snapshot is only taken when the histogram has been updated
+                if (slot != null && slot.write(0, histogram.getValue().getCount()))
+                    snapshot(slot, histogram.getValue().getSnapshot(), 1);
+            }
+            for (Map.Entry<String, Meter> meter : meters.entrySet()) {
+                Slot slot = slot(meter.getKey(), METER);
+                if (slot != null) {
+                    Meter value = meter.getValue();
+                    slot.write(0, value.getCount());
+                    slot.write(1, convertRate(value.getOneMinuteRate()));
+                    slot.write(2, convertRate(value.getFiveMinuteRate()));
+                    slot.write(3, convertRate(value.getFifteenMinuteRate()));
+                    slot.write(4, convertRate(value.getMeanRate()));
+                }
+            }
+            for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+                Slot slot = slot(timer.getKey(), TIMER);
+                if (slot != null && slot.write(0, timer.getValue().getCount()))
+                    snapshot(slot, timer.getValue().getSnapshot(), convertDuration(1));
+            }
+
+            // Frees the slots of the metrics that have been removed, which is skipped when the report fails as the slots of the metrics not reached yet would be freed as well
+            for (Iterator<Slot> iterator = slots.values().iterator(); iterator.hasNext();) {
+                Slot slot = iterator.next();
+                if (slot.tick != tick) {
+                    buffer.putInt(offset(slot.index), EMPTY);
+                    free.push(slot.index);
+                    iterator.remove();
+                }
+            }
+
+            buffer.putLong(TIME, System.currentTimeMillis());
+        } finally {
+            fence();
+            buffer.putLong(SEQUENCE, ++sequence);
+        }
+    }
+
+    // A gauge that fails does not prevent the other metrics from being reported
+    private static double value(Gauge<?> gauge) {
+        try {
+            Object value = gauge.getValue();
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+        } catch (RuntimeException cause) {
+            return Double.NaN;
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            super.stop();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException cause) {
+                throw new UncheckedIOException(cause);
+            }
+        }
+    }
+
+    // The volatile store followed by the volatile load prevents the stores into the mapped buffer from being reordered across the fence
+    private void fence() {
+        fence = sequence;
+        sequence = fence;
+    }
+
+    private void snapshot(Slot slot, Snapshot snapshot, double factor) {
+        slot.write(1, snapshot.getMin() * factor);
+        slot.write(2, snapshot.getMax() * factor);
+        slot.write(3, snapshot.getMean() * factor);
+        slot.write(4, snapshot.getStdDev() * factor);
+        slot.write(5, snapshot.getMedian() * factor);
+        slot.write(6, snapshot.get75thPercentile() * factor);
+        slot.write(7, snapshot.get95thPercentile() * factor);
+        slot.write(8, snapshot.get99thPercentile() * factor);
+    }
+
+    private Slot slot(String name, int type) {
+        Slot slot = slots.get(name);
+        if (slot != null && slot.type != type) {
+            buffer.putInt(offset(slot.index), EMPTY);
+            free.push(slot.index);
+            slots.remove(name);
+            slot = null;
+        }
+        if (slot == null) {
+            if (free.isEmpty())
+                return null;
+            slot = new Slot(free.pop(), type, name);
+            slots.put(name, slot);
+        }
+        slot.tick = tick;
+        return slot;
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private final class Slot {
+
+        private final int index;
+
+        private final int type;
+
+        // The values last written into the file
+        private final long[] values = new long[FIELDS];
+
+        private long tick;
+
+        private Slot(int index, int type, String name) {
+            this.index = index;
+            this.type = type;
+            int offset = offset(index);
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(bytes.length, NAME_SIZE);
+            // Does not truncate in the middle of a multi-byte character
+            while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80)
+                length--;
+            buffer.putInt(offset, type).putInt(offset + 4, length);
+            for (int i = 0; i < NAME_SIZE; i++)
+                buffer.put(offset + 8 + i, i < length ? bytes[i] : 0);
+            Arrays.fill(values, Long.MIN_VALUE);
+        }
+
+        boolean write(int field, double value) {
+            return write(field, Double.doubleToLongBits(value));
+        }
+
+        // Returns whether the field has changed
+        boolean write(int field, long value) {
+            if (values[field] == value)
+                return false;
+            buffer.putLong(offset(index) + 72 + field * 8, value);
+            values[field] = value;
+            return true;
+        }
+    }
+
+    /**
+     * A builder for {@link MappedFileReporter} instances.
+     */
+    public static class Builder {
+
+        private final MetricRegistry registry;
+
+        private int capacity = 1024;
+
+        private MetricFilter filter = MetricFilter.ALL;
+
+        private TimeUnit rateUnit = TimeUnit.SECONDS;
+
+        private TimeUnit durationUnit = TimeUnit.MILLISECONDS;
+
+        private Builder(MetricRegistry registry) {
+            this.registry = registry;
+        }
+
+        /**
+         * @param capacity the maximum number of metrics reported
+         * @return {@code this}
+         */
+        public Builder withCapacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder filter(MetricFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public Builder convertRatesTo(TimeUnit rateUnit) {
+            this.rateUnit = rateUnit;
+            return this;
+        }
+
+        public Builder convertDurationsTo(TimeUnit durationUnit) {
+            this.durationUnit = durationUnit;
+            return this;
+        }
+
+        /**
+         * @param file the file the metrics get mapped to, created if it does not exist
+         * @return a {@link MappedFileReporter}
+         * @throws IOException if the file cannot be mapped
+         */
+        public MappedFileReporter build(Path file) throws IOException {
+            return new MappedFileReporter(registry, file, capacity, filter, rateUnit, durationUnit);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Indexes the registry metrics by name, kept in sync through the registry listener, so that the metrics sharing a prefix get selected without scanning the registry
+/* package-private */ final class MetricIndex extends MetricRegistryListener.Base {
+
+    private final NavigableMap<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    private final MetricRegistry registry;
+
+    MetricIndex(MetricRegistry registry) {
+        this.registry = registry;
+        // The listener gets notified of the metrics already registered
+        registry.addListener(this);
+    }
+
+    void close() {
+        registry.removeListener(this);
+    }
+
+    NavigableMap<String, Metric> withPrefix(String prefix) {
+        if (prefix == null || prefix.isEmpty())
+            return metrics;
+        return metrics.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+    }
+
+    @Override
+    public void onGaugeAdded(String name, Gauge<?> gauge) {
+        metrics.put(name, gauge);
+    }
+
+    @Override
+    public void onGaugeRemoved(String name) {
+        metrics.remove(name);
+    }
+
+    @Override
+    public void onCounterAdded(String name, Counter counter) {
+        metrics.put(name, counter);
+    }
+
+    @Override
+    public void onCounterRemoved(String name) {
+        metrics.remove(name);
+    }
+
+    @Override
+    public void onHistogramAdded(String name, Histogram histogram) {
+        metrics.put(name, histogram);
+    }
+
+    @Override
+    public void onHistogramRemoved(String name) {
+        metrics.remove(name);
+    }
+
+    @Override
+    public void onMeterAdded(String name, Meter meter) {
+        metrics.put(name, meter);
+    }
+
+    @Override
+    public void onMeterRemoved(String name) {
+        metrics.remove(name);
+    }
+
+    @Override
+    public void onTimerAdded(String name, Timer timer) {
+        metrics.put(name, timer);
+    }
+
+    @Override
+    public void onTimerRemoved(String name) {
+        metrics.remove(name);
+    }
+}
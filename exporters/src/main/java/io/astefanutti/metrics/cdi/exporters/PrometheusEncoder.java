@@ -0,0 +1,229 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Encodes the registry metrics in the Prometheus text exposition format, reusing the encoded names of the metrics across encodings
+/* package-private */ final class PrometheusEncoder {
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+
+    private static final double SECONDS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AsciiBuffer buffer = new AsciiBuffer(64 * 1024);
+
+    private Map<String, Family> families = new HashMap<>();
+
+    // Not thread-safe, the buffer content is only valid until the next encoding
+    AsciiBuffer encode(MetricRegistry registry) {
+        buffer.reset();
+        // Only the families of the registered metrics are retained
+        Map<String, Family> encoded = new HashMap<>(families.size() * 4 / 3 + 1);
+        boolean changed = false;
+        // The metrics map is a view over the registry that is not copied, contrary to the typed accessors
+        for (Map.Entry<String, Metric> entry : registry.getMetrics().entrySet()) {
+            Metric metric = entry.getValue();
+            Kind kind = Kind.of(metric);
+            if (kind == null)
+                continue;
+
+            Family family = families.get(entry.getKey());
+            if (family == null || family.kind != kind) {
+                family = new Family(entry.getKey(), kind);
+                changed = true;
+            }
+            family.metric = metric;
+            encoded.put(entry.getKey(), family);
+        }
+        // The exposed names only have to be checked again when metrics are registered or removed
+        if (changed || encoded.size() != families.size())
+            expose(encoded);
+        families = encoded;
+
+        for (Family family : encoded.values()) {
+            if (family.exposed)
+                write(family, family.metric);
+            family.metric = null;
+        }
+        return buffer;
+    }
+
+    // Distinct metric names can be sanitized into the same Prometheus names, only the first of the colliding metrics in name order is exposed
+    private static void expose(Map<String, Family> families) {
+        Set<String> names = new HashSet<>();
+        for (Family family : new TreeMap<>(families).values()) {
+            family.exposed = true;
+            for (String name : family.names)
+                family.exposed &= !names.contains(name);
+            if (family.exposed)
+                names.addAll(Arrays.asList(family.names));
+        }
+    }
+
+    private void write(Family family, Metric metric) {
+        switch (family.kind) {
+            case GAUGE:
+                gauge(family, (Gauge<?>) metric);
+                break;
+            case COUNTER:
+                buffer.write(family.header).write(family.samples[0]);
+                value(((Counter) metric).getCount());
+                break;
+            case METER:
+                buffer.write(family.header).write(family.samples[0]);
+                value(((Meter) metric).getCount());
+                break;
+            case HISTOGRAM:
+                summary(family, ((Histogram) metric).getSnapshot(), ((Histogram) metric).getCount(), 1);
+                break;
+            case TIMER:
+                summary(family, ((Timer) metric).getSnapshot(), ((Timer) metric).getCount(), SECONDS);
+                break;
+        }
+    }
+
+    private void gauge(Family family, Gauge<?> gauge) {
+        Object value = gauge.getValue();
+        if (value instanceof Number) {
+            buffer.write(family.header).write(family.samples[0]);
+            value(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            buffer.write(family.header).write(family.samples[0]);
+            value((Boolean) value ? 1 : 0);
+        }
+    }
+
+    private void summary(Family family, Snapshot snapshot, long count, double unit) {
+        buffer.write(family.header);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            buffer.write(family.samples[i]);
+            value(snapshot.getValue(QUANTILES[i]) / unit);
+        }
+        // The sum is approximated from the snapshot mean as the metrics do not keep track of it
+        buffer.write(family.samples[QUANTILES.length]);
+        value(snapshot.getMean() * count / unit);
+        buffer.write(family.samples[QUANTILES.length + 1]);
+        value(count);
+    }
+
+    private void value(double value) {
+        if (Double.isNaN(value))
+            buffer.write("NaN");
+        else if (Double.isInfinite(value))
+            buffer.write(value > 0 ? "+Inf" : "-Inf");
+        else
+            buffer.write(value);
+        buffer.write((byte) '\n');
+    }
+
+    static String sanitize(String name) {
+        StringBuilder sanitized = new StringBuilder(name.length() + 1);
+        if (name.isEmpty() || Character.isDigit(name.charAt(0)))
+            sanitized.append('_');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sanitized.append(c < 0x80 && (Character.isLetterOrDigit(c) || c == '_' || c == ':') ? c : '_');
+        }
+        return sanitized.toString();
+    }
+
+    private enum Kind {
+
+        GAUGE, COUNTER, METER, HISTOGRAM, TIMER;
+
+        static Kind of(Metric metric) {
+            if (metric instanceof Gauge)
+                return GAUGE;
+            else if (metric instanceof Counter)
+                return COUNTER;
+            else if (metric instanceof Meter)
+                return METER;
+            else if (metric instanceof Histogram)
+                return HISTOGRAM;
+            else if (metric instanceof Timer)
+                return TIMER;
+            else
+                return null;
+        }
+    }
+
+    private static final class Family {
+
+        private final Kind kind;
+
+        private final byte[] header;
+
+        private final byte[][] samples;
+
+        // The Prometheus names of the family and of its samples
+        private final String[] names;
+
+        private boolean exposed;
+
+        // The metric being encoded
+        private Metric metric;
+
+        private Family(String name, Kind kind) {
+            String sanitized = sanitize(name);
+            this.kind = kind;
+            switch (kind) {
+                case GAUGE:
+                case COUNTER:
+                    // The counters can be decremented so that they are exposed as gauges
+                    header = ascii("# TYPE " + sanitized + " gauge\n");
+                    samples = new byte[][] {ascii(sanitized + " ")};
+                    names = new String[] {sanitized};
+                    break;
+                case METER:
+                    header = ascii("# TYPE " + sanitized + "_total counter\n");
+                    samples = new byte[][] {ascii(sanitized + "_total ")};
+                    names = new String[] {sanitized + "_total"};
+                    break;
+                default:
+                    // The timers are exposed in seconds
+                    String family = kind == Kind.TIMER ? sanitized + "_seconds" : sanitized;
+                    header = ascii("# TYPE " + family + " summary\n");
+                    samples = new byte[QUANTILES.length + 2][];
+                    for (int i = 0; i < QUANTILES.length; i++)
+                        samples[i] = ascii(family + "{quantile=\"" + QUANTILES[i] + "\"} ");
+                    samples[QUANTILES.length] = ascii(family + "_sum ");
+                    samples[QUANTILES.length + 1] = ascii(family + "_count ");
+                    names = new String[] {family, family + "_sum", family + "_count"};
+            }
+        }
+
+        private static byte[] ascii(String value) {
+            return value.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+}
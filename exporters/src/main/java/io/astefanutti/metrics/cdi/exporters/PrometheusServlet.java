@@ -0,0 +1,167 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.MetricRegistry;
+
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exposes the metrics of the CDI {@link MetricRegistry} bean in the Prometheus text exposition format.
+ * <p>
+ * The names of the metrics are encoded once and the metrics get written into a buffer that is reused across scrapes.
+ * The scrapes occurring within the {@code snapshot-window} initialization parameter, in milliseconds and one second by
+ * default, share the same encoded snapshot, that is only compressed once for the clients accepting the gzip encoding with a
+ * non-zero quality value.
+ * <p>
+ * Counters and gauges are exposed as gauges, meters as counters suffixed with {@code _total}, and histograms and timers
+ * as summaries, the timers being suffixed with {@code _seconds}. The {@code _sum} samples of the summaries are derived
+ * from the mean of their snapshots multiplied by their counts, so that they are only exact when their reservoirs retain
+ * all the measurements.
+ *
+ * @since 1.7.0
+ */
+public class PrometheusServlet extends HttpServlet {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final long serialVersionUID = 1L;
+
+    @Inject
+    private transient MetricRegistry registry;
+
+    private transient PrometheusEncoder encoder;
+
+    private long window = TimeUnit.SECONDS.toNanos(1);
+
+    private transient volatile Snapshot snapshot;
+
+    public PrometheusServlet() {
+    }
+
+    public PrometheusServlet(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void init() throws ServletException {
+        String window = getInitParameter("snapshot-window");
+        if (window != null)
+            this.window = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(window));
+        if (registry == null)
+            throw new ServletException("No metric registry available, make sure that the servlet is injected by the CDI container");
+        encoder = new PrometheusEncoder();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Snapshot snapshot = snapshot();
+        byte[] content;
+        // The content depends on the accepted encodings so that caches must not share it across them
+        response.setHeader("Vary", "Accept-Encoding");
+        if (acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            response.setHeader("Content-Encoding", "gzip");
+            content = snapshot.gzipped();
+        } else {
+            content = snapshot.content;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(content.length);
+        response.getOutputStream().write(content);
+    }
+
+    // Returns whether the gzip encoding is accepted with a non-zero quality value, explicitly or with the wildcard
+    static boolean acceptsGzip(String header) {
+        if (header == null)
+            return false;
+        double gzip = -1;
+        double any = -1;
+        for (String token : header.split(",")) {
+            String[] parameters = token.split(";");
+            String coding = parameters[0].trim();
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String[] parameter = parameters[i].split("=", 2);
+                if (parameter.length == 2 && parameter[0].trim().equalsIgnoreCase("q")) {
+                    try {
+                        quality = Double.parseDouble(parameter[1].trim());
+                    } catch (NumberFormatException cause) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip"))
+                gzip = Math.max(gzip, quality);
+            else if (coding.equals("*"))
+                any = quality;
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    // Concurrent scrapes wait for the encoding in progress rather than encoding the registry again
+    private Snapshot snapshot() {
+        Snapshot snapshot = this.snapshot;
+        if (snapshot != null && snapshot.isFresh(window))
+            return snapshot;
+
+        synchronized (this) {
+            snapshot = this.snapshot;
+            if (snapshot == null || !snapshot.isFresh(window))
+                this.snapshot = snapshot = new Snapshot(encoder.encode(registry).toByteArray());
+            return snapshot;
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final long time = System.nanoTime();
+
+        private final byte[] content;
+
+        private byte[] gzipped;
+
+        private Snapshot(byte[] content) {
+            this.content = content;
+        }
+
+        private boolean isFresh(long window) {
+            return System.nanoTime() - time < window;
+        }
+
+        private synchronized byte[] gzipped() {
+            if (gzipped == null) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 4);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+                    gzip.write(content);
+                } catch (IOException cause) {
+                    throw new UncheckedIOException(cause);
+                }
+                gzipped = output.toByteArray();
+            }
+            return gzipped;
+        }
+    }
+}
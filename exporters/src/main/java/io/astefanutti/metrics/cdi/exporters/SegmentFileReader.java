@@ -0,0 +1,142 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.zip.CRC32;
+
+/**
+ * Reads back the segment files written by a {@link SegmentFileReporter}.
+ * <p>
+ * The segments are read in sequence order, each segment up to its first empty, truncated or corrupted record, as left
+ * by a process that crashed while appending it. It can be run from the command line with the directory of the segment
+ * files as argument to print their records, one line per metric, e.g.:
+ * <pre>
+ * java -cp metrics-core.jar:metrics-cdi-exporters.jar io.astefanutti.metrics.cdi.exporters.SegmentFileReader /var/log/metrics
+ * </pre>
+ *
+ * @since 1.7.0
+ */
+public final class SegmentFileReader {
+
+    private SegmentFileReader() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: " + SegmentFileReader.class.getName() + " <directory>");
+            System.exit(1);
+        }
+        read(Paths.get(args[0]), new Printer(System.out));
+    }
+
+    /**
+     * Reads the records of all the segment files of the given directory.
+     *
+     * @param directory the directory of the segment files
+     * @param handler the handler notified of the records metrics
+     * @throws IOException if a segment file cannot be read
+     */
+    public static void read(Path directory, BinarySnapshotDecoder.Handler handler) throws IOException {
+        for (Path segment : SegmentFileReporter.segments(directory)) {
+            BinarySnapshotDecoder decoder = new BinarySnapshotDecoder(new ByteArrayInputStream(frames(segment)));
+            while (decoder.decode(handler)) {
+                // Decodes the frames of the segment session
+            }
+        }
+    }
+
+    // Returns the concatenated frames of the valid records of the segment
+    private static byte[] frames(Path segment) throws IOException {
+        ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(segment));
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        CRC32 checksum = new CRC32();
+        while (records.remaining() >= SegmentFileReporter.RECORD_HEADER_SIZE) {
+            int length = records.getInt();
+            int crc = records.getInt();
+            if (length <= 0 || length > records.remaining())
+                break;
+            checksum.reset();
+            checksum.update(records.array(), records.position(), length);
+            if ((int) checksum.getValue() != crc)
+                break;
+            frames.write(records.array(), records.position(), length);
+            records.position(records.position() + length);
+        }
+        return frames.toByteArray();
+    }
+
+    private static final class Printer implements BinarySnapshotDecoder.Handler {
+
+        private final PrintStream output;
+
+        private Instant time;
+
+        private Printer(PrintStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void time(long time) {
+            this.time = Instant.ofEpochMilli(time);
+        }
+
+        @Override
+        public void gauge(String name, Number value) {
+            output.println(time + " " + name + " value=" + value);
+        }
+
+        @Override
+        public void counter(String name, long count) {
+            output.println(time + " " + name + " count=" + count);
+        }
+
+        @Override
+        public void histogram(String name, long count, Snapshot snapshot) {
+            output.println(time + " " + name + " count=" + count + snapshot(snapshot));
+        }
+
+        @Override
+        public void meter(String name, long count, double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate, double meanRate) {
+            output.println(time + " " + name + " count=" + count + rates(oneMinuteRate, fiveMinuteRate, fifteenMinuteRate, meanRate));
+        }
+
+        @Override
+        public void timer(String name, long count, Snapshot snapshot, double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate, double meanRate) {
+            output.println(time + " " + name + " count=" + count + snapshot(snapshot) + rates(oneMinuteRate, fiveMinuteRate, fifteenMinuteRate, meanRate));
+        }
+
+        private static String snapshot(Snapshot snapshot) {
+            return " min=" + snapshot.getMin() + " max=" + snapshot.getMax() + " mean=" + snapshot.getMean() + " stddev=" + snapshot.getStdDev()
+                + " p50=" + snapshot.getMedian() + " p75=" + snapshot.get75thPercentile() + " p95=" + snapshot.get95thPercentile()
+                + " p98=" + snapshot.get98thPercentile() + " p99=" + snapshot.get99thPercentile() + " p999=" + snapshot.get999thPercentile();
+        }
+
+        private static String rates(double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate, double meanRate) {
+            return " m1_rate=" + oneMinuteRate + " m5_rate=" + fiveMinuteRate + " m15_rate=" + fifteenMinuteRate + " mean_rate=" + meanRate;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Timer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Appends the metrics of a {@link MetricRegistry} to rolling segment files, for post-mortem analysis with the {@link SegmentFileReader}.
+ * <p>
+ * Each report is encoded as a {@link BinarySnapshotEncoder} frame and appended, with a single write, as a record made of
+ * the frame length and its CRC-32 checksum, as big-endian integers, followed by the frame. Each segment file starts a new
+ * encoding session, so that it can be read independently of the previous segments, and is preallocated to the segment
+ * size, 16 MiB by default, by zero-filling it when created. A new segment is also started once a report fails to be
+ * encoded or written, as the following frames would be relative to the lost one. A new segment is started once the next record does not fit in the current one,
+ * and the oldest segments are deleted once the total size of the segments exceeds the retention size, 256 MiB by default.
+ * <p>
+ * The segment files are named {@value #PREFIX} followed by their sequence number and {@value #SUFFIX}, the sequence
+ * numbers of the segments created by the reporter following those of the segments already in the directory.
+ *
+ * @since 1.7.0
+ */
+public class SegmentFileReporter extends ScheduledReporter {
+
+    static final String PREFIX = "metrics-";
+
+    static final String SUFFIX = ".seg";
+
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int ZERO_FILL_SIZE = 64 << 10;
+
+    private final Path directory;
+
+    private final long segmentSize;
+
+    private final long retentionSize;
+
+    private final Deque<Path> segments = new ArrayDeque<>();
+
+    private final Frame frame = new Frame();
+
+    private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+    private final CRC32 checksum = new CRC32();
+
+    private long sequence;
+
+    private FileChannel channel;
+
+    private long position;
+
+    private BinarySnapshotEncoder encoder;
+
+    protected SegmentFileReporter(MetricRegistry registry, Path directory, long segmentSize, long retentionSize, MetricFilter filter) throws IOException {
+        super(registry, "segment-file-reporter", filter, TimeUnit.SECONDS, TimeUnit.NANOSECONDS);
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.retentionSize = retentionSize;
+        segments.addAll(segments(directory));
+        if (!segments.isEmpty())
+            sequence = sequence(segments.getLast());
+    }
+
+    public static Builder forRegistry(MetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    @Override
+    public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        SortedMap<String, Metric> metrics = new TreeMap<>();
+        metrics.putAll(gauges);
+        metrics.putAll(counters);
+        metrics.putAll(histograms);
+        metrics.putAll(meters);
+        metrics.putAll(timers);
+
+        try {
+            if (channel == null)
+                roll();
+            encode(metrics);
+            // The frame gets encoded again in the new session of the next segment when it does not fit in the current one
+            if (position > 0 && position + RECORD_HEADER_SIZE + frame.size() > segmentSize) {
+                roll();
+                encode(metrics);
+            }
+
+            ByteBuffer payload = frame.buffer();
+            checksum.reset();
+            checksum.update(frame.buffer());
+            header.clear();
+            header.putInt(frame.size()).putInt((int) checksum.getValue()).flip();
+            // The record gets appended with a single gathering write per report
+            ByteBuffer[] record = {header, payload};
+            while (payload.hasRemaining())
+                position += channel.write(record);
+        } catch (IOException cause) {
+            abandon(cause);
+            throw new UncheckedIOException(cause);
+        } catch (RuntimeException cause) {
+            abandon(cause);
+            throw cause;
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            super.stop();
+        } finally {
+            try {
+                if (channel != null)
+                    channel.close();
+            } catch (IOException cause) {
+                throw new UncheckedIOException(cause);
+            }
+        }
+    }
+
+    // The encoding session has moved past the frame that failed to be encoded or written, so that the next report
+    // starts a new segment rather than appending frames that are relative to a lost one
+    private void abandon(Exception cause) {
+        try {
+            if (channel != null)
+                channel.close();
+        } catch (IOException suppressed) {
+            cause.addSuppressed(suppressed);
+        } finally {
+            channel = null;
+        }
+    }
+
+    private void encode(SortedMap<String, Metric> metrics) throws IOException {
+        frame.reset();
+        encoder.encode(metrics);
+    }
+
+    // Starts a new segment, preallocated to the segment size, and deletes the oldest segments beyond the retention size
+    private void roll() throws IOException {
+        if (channel != null)
+            channel.close();
+
+        Path segment = directory.resolve(String.format("%s%019d%s", PREFIX, ++sequence, SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.addLast(segment);
+        // The segment gets zero-filled rather than extended as a sparse file so that its blocks get allocated upfront
+        ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(segmentSize, ZERO_FILL_SIZE));
+        for (long offset = 0; offset < segmentSize; ) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), segmentSize - offset));
+            offset += channel.write(zeros, offset);
+        }
+        channel.position(0);
+        position = 0;
+        encoder = new BinarySnapshotEncoder(frame);
+
+        long size = 0;
+        for (Path previous : segments)
+            size += previous.toFile().length();
+        while (segments.size() > 1 && size > retentionSize) {
+            Path oldest = segments.removeFirst();
+            size -= oldest.toFile().length();
+            Files.deleteIfExists(oldest);
+        }
+    }
+
+    // Returns the segments of the directory ordered by sequence number
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path segment : stream)
+                segments.add(segment);
+        }
+        // The sequence numbers are zero-padded so that the names sort in sequence order
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long sequence(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException cause) {
+            return 0L;
+        }
+    }
+
+    // Exposes the encoded frame without copying it
+    private static final class Frame extends ByteArrayOutputStream {
+
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * A builder for {@link SegmentFileReporter} instances.
+     */
+    public static class Builder {
+
+        private final MetricRegistry registry;
+
+        private long segmentSize = 16L << 20;
+
+        private long retentionSize = 256L << 20;
+
+        private MetricFilter filter = MetricFilter.ALL;
+
+        private Builder(MetricRegistry registry) {
+            this.registry = registry;
+        }
+
+        /**
+         * @param segmentSize the size the segment files get preallocated to, in bytes
+         * @return {@code this}
+         */
+        public Builder withSegmentSize(long segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * @param retentionSize the total size of the segment files beyond which the oldest segments get deleted, in bytes
+         * @return {@code this}
+         */
+        public Builder withRetentionSize(long retentionSize) {
+            this.retentionSize = retentionSize;
+            return this;
+        }
+
+        public Builder filter(MetricFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        /**
+         * @param directory the directory of the segment files, created if it does not exist
+         * @return a {@link SegmentFileReporter}
+         * @throws IOException if the directory cannot be created or listed
+         */
+        public SegmentFileReporter build(Path directory) throws IOException {
+            return new SegmentFileReporter(registry, directory, segmentSize, retentionSize, filter);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Reports the metrics of a {@link MetricRegistry} to a StatsD or DogStatsD agent over UDP.
+ * <p>
+ * The events are aggregated on the client side by the registry metrics, so that each report only sends the difference
+ * of the counter and meter counts since the previous report as StatsD counters, and the summary statistics of the
+ * histograms and timers that have been updated since the previous report, along with the numeric gauges, as StatsD gauges.
+ * The lines are batched into datagrams that do not exceed the maximum packet size, 1432 bytes by default to fit into
+ * the Ethernet MTU, and are sent through a single non-blocking channel, so that a report never waits for the network.
+ * <p>
+ * The datagrams that cannot be sent, because the socket send buffer is full or the agent is unreachable, are dropped and
+ * counted by the {@code io.astefanutti.metrics.cdi.exporters.StatsdReporter.dropped-packets} counter, and the duration
+ * of each report is recorded by the {@code io.astefanutti.metrics.cdi.exporters.StatsdReporter.flush-latency} timer,
+ * both registered in the reported registry.
+ *
+ * @since 1.7.0
+ */
+public class StatsdReporter extends ScheduledReporter {
+
+    private static final String[] HISTOGRAM_SUFFIXES = {".min", ".max", ".mean", ".stddev", ".p50", ".p75", ".p95", ".p98", ".p99", ".p999"};
+
+    private final DatagramChannel channel;
+
+    private final InetSocketAddress address;
+
+    private final String prefix;
+
+    private final byte[] tags;
+
+    private final ByteBuffer packet;
+
+    private final AsciiBuffer line = new AsciiBuffer(256);
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private final Counter dropped;
+
+    private final Timer latency;
+
+    private long tick;
+
+    protected StatsdReporter(MetricRegistry registry, InetSocketAddress address, String prefix, String[] tags, int maxPacketSize, MetricFilter filter, TimeUnit rateUnit, TimeUnit durationUnit) throws IOException {
+        super(registry, "statsd-reporter", filter, rateUnit, durationUnit);
+        this.address = address;
+        this.prefix = prefix;
+        this.tags = tags.length == 0 ? new byte[0] : ("|#" + String.join(",", tags)).getBytes(StandardCharsets.UTF_8);
+        this.packet = ByteBuffer.allocateDirect(maxPacketSize);
+        this.dropped = registry.counter(name(StatsdReporter.class, "dropped-packets"));
+        this.latency = registry.timer(name(StatsdReporter.class, "flush-latency"));
+        this.channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+    }
+
+    public static Builder forRegistry(MetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    @Override
+    public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, Timer> timers) {
+        long start = System.nanoTime();
+        tick++;
+
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            Object value = gauge.getValue().getValue();
+            if (value instanceof Number)
+                send(entry(gauge.getKey()).name, null, ((Number) value).doubleValue(), 'g');
+        }
+        for (Map.Entry<String, Counter> counter : counters.entrySet())
+            count(entry(counter.getKey()), counter.getValue().getCount());
+        for (Map.Entry<String, Meter> meter : meters.entrySet())
+            count(entry(meter.getKey()), meter.getValue().getCount());
+        for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+            Entry entry = entry(histogram.getKey());
+            // The snapshot is only taken when the histogram has been updated
+            if (count(entry, histogram.getValue().getCount()))
+                snapshot(entry, histogram.getValue().getSnapshot(), 1);
+        }
+        for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+            Entry entry = entry(timer.getKey());
+            if (count(entry, timer.getValue().getCount()))
+                snapshot(entry, timer.getValue().getSnapshot(), convertDuration(1));
+        }
+        flush();
+
+        // Forgets the metrics that have been removed
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();)
+            if (iterator.next().tick != tick)
+                iterator.remove();
+
+        latency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void stop() {
+        try {
+            super.stop();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException cause) {
+                throw new UncheckedIOException(cause);
+            }
+        }
+    }
+
+    // Sends the count difference since the previous report and returns whether the count has changed
+    private boolean count(Entry entry, long count) {
+        long delta = count - entry.count;
+        entry.count = count;
+        if (delta == 0L)
+            return false;
+        line.reset();
+        line.write(entry.name).write((byte) ':').write(delta).write((byte) '|').write((byte) 'c').write(tags);
+        append();
+        return true;
+    }
+
+    private void snapshot(Entry entry, Snapshot snapshot, double factor) {
+        send(entry.name, HISTOGRAM_SUFFIXES[0], snapshot.getMin() * factor, 'g');
+        send(entry.name, HISTOGRAM_SUFFIXES[1], snapshot.getMax() * factor, 'g');
+        send(entry.name, HISTOGRAM_SUFFIXES[2], snapshot.getMean() * factor, 'g');
+        send(entry.name, HISTOGRAM_SUFFIXES[3], snapshot.getStdDev() * factor, 'g');
+        send(entry.name, HISTOGRAM_SUFFIXES[4], snapshot.getMedian() * factor, 'g');
+        send(entry.name, HISTOGRAM_SUFFIXES[5], snapshot.get75thPercentile() * factor, 'g');
+        send(entry.name, HISTOGRAM_SUFFIXES[6], snapshot.get95thPercentile() * factor, 'g');
+        send(entry.name, HISTOGRAM_SUFFIXES[7], snapshot.get98thPercentile() * factor, 'g');
+        send(entry.name, HISTOGRAM_SUFFIXES[8], snapshot.get99thPercentile() * factor, 'g');
+        send(entry.name, HISTOGRAM_SUFFIXES[9], snapshot.get999thPercentile() * factor, 'g');
+    }
+
+    private void send(byte[] name, String suffix, double value, char type) {
+        // StatsD agents do not parse non-finite values
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            return;
+        line.reset();
+        line.write(name);
+        if (suffix != null)
+            line.write(suffix);
+        line.write((byte) ':').write(value).write((byte) '|').write((byte) type).write(tags);
+        append();
+    }
+
+    // Appends the line to the current datagram, that gets sent first if the line does not fit in it
+    private void append() {
+        int separator = packet.position() > 0 ? 1 : 0;
+        if (packet.position() + separator + line.size() > packet.capacity()) {
+            flush();
+            separator = 0;
+        }
+        if (line.size() > packet.capacity()) {
+            // A line that does not fit in a datagram on its own cannot be sent
+            dropped.inc();
+            return;
+        }
+        if (separator > 0)
+            packet.put((byte) '\n');
+        line.writeTo(packet);
+    }
+
+    private void flush() {
+        if (packet.position() == 0)
+            return;
+        packet.flip();
+        try {
+            // The non-blocking channel sends nothing when the socket send buffer is full
+            if (channel.send(packet, address) == 0)
+                dropped.inc();
+        } catch (IOException cause) {
+            dropped.inc();
+        } finally {
+            packet.clear();
+        }
+    }
+
+    private Entry entry(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = new Entry(sanitize(prefix == null ? name : name(prefix, name)));
+            entries.put(name, entry);
+        }
+        entry.tick = tick;
+        return entry;
+    }
+
+    // The StatsD protocol reserves the colon, pipe, at sign and line separators
+    static byte[] sanitize(String name) {
+        StringBuilder sanitized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sanitized.append(c == ':' || c == '|' || c == '@' || c == '#' || Character.isWhitespace(c) ? '_' : c);
+        }
+        return sanitized.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry {
+
+        private final byte[] name;
+
+        // The count sent by the previous report
+        private long count;
+
+        private long tick;
+
+        private Entry(byte[] name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A builder for {@link StatsdReporter} instances.
+     */
+    public static class Builder {
+
+        private final MetricRegistry registry;
+
+        private String prefix;
+
+        private String[] tags = new String[0];
+
+        private int maxPacketSize = 1432;
+
+        private MetricFilter filter = MetricFilter.ALL;
+
+        private TimeUnit rateUnit = TimeUnit.SECONDS;
+
+        private TimeUnit durationUnit = TimeUnit.MILLISECONDS;
+
+        private Builder(MetricRegistry registry) {
+            this.registry = registry;
+        }
+
+        public Builder prefixedWith(String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        /**
+         * @param tags the DogStatsD tags, e.g. {@code env:prod}, appended to every line
+         * @return {@code this}
+         */
+        public Builder withTags(String... tags) {
+            this.tags = tags;
+            return this;
+        }
+
+        /**
+         * @param maxPacketSize the maximum size of the datagrams, in bytes
+         * @return {@code this}
+         */
+        public Builder withMaxPacketSize(int maxPacketSize) {
+            this.maxPacketSize = maxPacketSize;
+            return this;
+        }
+
+        public Builder filter(MetricFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public Builder convertRatesTo(TimeUnit rateUnit) {
+            this.rateUnit = rateUnit;
+            return this;
+        }
+
+        public Builder convertDurationsTo(TimeUnit durationUnit) {
+            this.durationUnit = durationUnit;
+            return this;
+        }
+
+        /**
+         * @param address the address of the StatsD agent
+         * @return a {@link StatsdReporter}
+         * @throws IOException if the datagram channel cannot be opened
+         */
+        public StatsdReporter build(InetSocketAddress address) throws IOException {
+            return new StatsdReporter(registry, address, prefix, tags, maxPacketSize, filter, rateUnit, durationUnit);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+// Snapshot decoded from the quantiles of a binary snapshot frame, that interpolates linearly between them
+/* package-private */ final class SummarySnapshot extends Snapshot {
+
+    private final long[] quantiles;
+
+    private final double mean;
+
+    private final double stdDev;
+
+    SummarySnapshot(long[] quantiles, double mean, double stdDev) {
+        this.quantiles = quantiles;
+        this.mean = mean;
+        this.stdDev = stdDev;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile))
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        double[] bounds = BinarySnapshotEncoder.QUANTILES;
+        int i = 1;
+        while (i < bounds.length - 1 && quantile > bounds[i])
+            i++;
+        double ratio = (quantile - bounds[i - 1]) / (bounds[i] - bounds[i - 1]);
+        return quantiles[i - 1] + ratio * (quantiles[i] - quantiles[i - 1]);
+    }
+
+    @Override
+    public long[] getValues() {
+        return quantiles.clone();
+    }
+
+    @Override
+    public int size() {
+        return quantiles.length;
+    }
+
+    @Override
+    public long getMax() {
+        return quantiles[quantiles.length - 1];
+    }
+
+    @Override
+    public double getMean() {
+        return mean;
+    }
+
+    @Override
+    public long getMin() {
+        return quantiles[0];
+    }
+
+    @Override
+    public double getStdDev() {
+        return stdDev;
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            for (long value : quantiles)
+                writer.printf("%d%n", value);
+        }
+    }
+}
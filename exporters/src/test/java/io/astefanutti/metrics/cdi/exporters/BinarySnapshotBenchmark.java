@@ -0,0 +1,74 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Compares the size and the encoding time of the binary snapshots with the JSON encoding, run with its main method as it is not a test.
+// Both timings include taking the reservoir snapshots, which the binary encoding sorts when the JSON encoding computes the quantiles
+public final class BinarySnapshotBenchmark {
+
+    private static final int METRICS = 20;
+
+    private static final int ITERATIONS = 2000;
+
+    private BinarySnapshotBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        MetricRegistry registry = new MetricRegistry();
+        for (int metric = 0; metric < METRICS; metric++) {
+            registry.counter(MetricRegistry.name("app", "counter", Integer.toString(metric))).inc(metric);
+            registry.meter(MetricRegistry.name("app", "meter", Integer.toString(metric))).mark(metric);
+            for (int value = 0; value < 1000; value++) {
+                registry.histogram(MetricRegistry.name("app", "histogram", Integer.toString(metric))).update(ThreadLocalRandom.current().nextInt(10000));
+                registry.timer(MetricRegistry.name("app", "timer", Integer.toString(metric))).update(ThreadLocalRandom.current().nextInt(100000), TimeUnit.MICROSECONDS);
+            }
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinarySnapshotEncoder encoder = new BinarySnapshotEncoder(output);
+        AsciiBuffer json = new AsciiBuffer(1 << 20);
+
+        // Warms up both encoders before measuring them
+        for (int run = 0; run < 2; run++) {
+            long binaryTime = 0, jsonTime = 0;
+            long binaryBytes = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                // Only the first frame of the session carries the names, which is the common case for long-lived sessions
+                output.reset();
+                long start = System.nanoTime();
+                encoder.encode(registry.getMetrics());
+                binaryTime += System.nanoTime() - start;
+                binaryBytes += output.size();
+
+                json.reset();
+                start = System.nanoTime();
+                new JsonEncoder(registry.getMetrics()).encode(json);
+                jsonTime += System.nanoTime() - start;
+            }
+            if (run > 0) {
+                System.out.printf("binary: %,d bytes per frame, %,d us per frame%n", binaryBytes / ITERATIONS, TimeUnit.NANOSECONDS.toMicros(binaryTime / ITERATIONS));
+                System.out.printf("json:   %,d bytes per frame, %,d us per frame%n", json.size(), TimeUnit.NANOSECONDS.toMicros(jsonTime / ITERATIONS));
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.hasKey;
+import static org.junit.Assert.assertThat;
+
+public class BinarySnapshotEncoderTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private final BinarySnapshotEncoder encoder = new BinarySnapshotEncoder(output);
+
+    @Test
+    public void decodeEncodedMetrics() throws IOException {
+        registry.counter("app.requests").inc(3);
+        registry.register("app.ratio", (Gauge<Double>) () -> 0.25);
+        registry.register("app.size", (Gauge<Integer>) () -> -42);
+        registry.register("app.name", (Gauge<String>) () -> "app");
+        registry.meter("app.hits").mark(2);
+        registry.histogram("app.sizes").update(10);
+        registry.histogram("app.sizes").update(-3);
+        registry.timer("app.latency").update(5, TimeUnit.MILLISECONDS);
+        encoder.encode(registry.getMetrics());
+
+        Frame frame = decode().get(0);
+        assertThat("Non-numeric gauge is decoded", frame.values, not(hasKey("app.name")));
+        assertThat("Double gauge is incorrect", frame.values.get("app.ratio"), is(equalTo(0.25)));
+        assertThat("Long gauge is incorrect", frame.values.get("app.size"), is(equalTo(-42L)));
+        assertThat("Counter is incorrect", frame.values.get("app.requests"), is(equalTo(3L)));
+        assertThat("Meter is incorrect", frame.values.get("app.hits"), is(equalTo(2L)));
+        assertThat("Histogram is incorrect", frame.values.get("app.sizes"), is(equalTo(2L)));
+        assertThat("Histogram min is incorrect", frame.snapshots.get("app.sizes").getMin(), is(equalTo(-3L)));
+        assertThat("Histogram max is incorrect", frame.snapshots.get("app.sizes").getMax(), is(equalTo(10L)));
+        assertThat("Histogram median is incorrect", frame.snapshots.get("app.sizes").getMedian(), is(closeTo(registry.histogram("app.sizes").getSnapshot().getMedian(), 0.5)));
+        assertThat("Histogram mean is incorrect", frame.snapshots.get("app.sizes").getMean(), is(closeTo(registry.histogram("app.sizes").getSnapshot().getMean(), 0.001)));
+        assertThat("Timer is incorrect", frame.values.get("app.latency"), is(equalTo(1L)));
+        assertThat("Timer max is incorrect", frame.snapshots.get("app.latency").getMax(), is(equalTo(TimeUnit.MILLISECONDS.toNanos(5))));
+        assertThat("Frame time is incorrect", (double) frame.time, is(closeTo(System.currentTimeMillis(), 60000)));
+    }
+
+    @Test
+    public void decodeCountDifferencesAcrossFrames() throws IOException {
+        registry.counter("app.requests").inc(1000000);
+        encoder.encode(registry.getMetrics());
+        int first = output.size();
+
+        registry.counter("app.requests").inc();
+        encoder.encode(registry.getMetrics());
+
+        // The name is not sent again and the count difference fits in one byte
+        assertThat("Second frame is not smaller", output.size() - first, is(lessThan(first - 5)));
+        registry.remove("app.requests");
+        registry.counter("app.errors").dec(2);
+        encoder.encode(registry.getMetrics());
+
+        List<Frame> frames = decode();
+        assertThat("Frames number is incorrect", frames.size(), is(equalTo(3)));
+        assertThat("Counter is incorrect", frames.get(1).values.get("app.requests"), is(equalTo(1000001L)));
+        assertThat("Removed counter is decoded", frames.get(2).values, not(hasKey("app.requests")));
+        assertThat("Added counter is incorrect", frames.get(2).values.get("app.errors"), is(equalTo(-2L)));
+        assertThat("Frame time is incorrect", frames.get(2).time, is(not(lessThan(frames.get(0).time))));
+    }
+
+    @Test
+    public void encodeSmallerThanJson() throws IOException {
+        for (int metric = 0; metric < 50; metric++) {
+            registry.counter("app.counter." + metric).inc(metric * 1000);
+            for (int value = 0; value < 100; value++) {
+                registry.histogram("app.histogram." + metric).update(value * 10);
+                registry.timer("app.timer." + metric).update(value, TimeUnit.MICROSECONDS);
+            }
+        }
+        encoder.encode(registry.getMetrics());
+
+        AsciiBuffer json = new AsciiBuffer(1024);
+        new JsonEncoder(registry.getMetrics()).encode(json);
+
+        assertThat("Binary snapshot is not several times smaller than JSON", output.size(), is(lessThan(json.size() / 4)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectInvalidSession() throws IOException {
+        new BinarySnapshotDecoder(new ByteArrayInputStream(new byte[] {'{', '}', 0, 0, 0})).decode(new BinarySnapshotDecoder.Handler() {});
+    }
+
+    private List<Frame> decode() throws IOException {
+        BinarySnapshotDecoder decoder = new BinarySnapshotDecoder(new ByteArrayInputStream(output.toByteArray()));
+        List<Frame> frames = new ArrayList<>();
+        Frame frame = new Frame();
+        while (decoder.decode(frame)) {
+            frames.add(frame);
+            frame = new Frame();
+        }
+        return frames;
+    }
+
+    private static final class Frame implements BinarySnapshotDecoder.Handler {
+
+        private long time;
+
+        private final Map<String, Object> values = new HashMap<>();
+
+        private final Map<String, Snapshot> snapshots = new HashMap<>();
+
+        @Override
+        public void time(long time) {
+            this.time = time;
+        }
+
+        @Override
+        public void gauge(String name, Number value) {
+            values.put(name, value);
+        }
+
+        @Override
+        public void counter(String name, long count) {
+            values.put(name, count);
+        }
+
+        @Override
+        public void histogram(String name, long count, Snapshot snapshot) {
+            values.put(name, count);
+            snapshots.put(name, snapshot);
+        }
+
+        @Override
+        public void meter(String name, long count, double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate, double meanRate) {
+            values.put(name, count);
+        }
+
+        @Override
+        public void timer(String name, long count, Snapshot snapshot, double oneMinuteRate, double fiveMinuteRate, double fifteenMinuteRate, double meanRate) {
+            values.put(name, count);
+            snapshots.put(name, snapshot);
+        }
+    }
+}
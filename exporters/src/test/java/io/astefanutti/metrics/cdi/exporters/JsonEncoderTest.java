@@ -0,0 +1,152 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class JsonEncoderTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private final MetricIndex index = new MetricIndex(registry);
+
+    @After
+    public void closeIndex() {
+        index.close();
+    }
+
+    @Test
+    public void encodeMetrics() throws IOException {
+        registry.counter("app.requests").inc(3);
+        registry.register("app.name", (Gauge<String>) () -> "café \"quoted\"");
+        registry.meter("app.hits").mark(2);
+        registry.histogram("app.sizes").update(10);
+        registry.timer("app.latency").update(5, TimeUnit.MILLISECONDS);
+
+        String json = encode("");
+        assertThat("Version is not encoded", json, startsWith("{\"version\":\"4.0.0\",\"gauges\":{"));
+        assertThat("Gauge is not encoded", json, containsString("\"app.name\":{\"value\":\"café \\\"quoted\\\"\"}"));
+        assertThat("Counter is not encoded", json, containsString("\"counters\":{\"app.requests\":{\"count\":3}}"));
+        assertThat("Histogram is not encoded", json, containsString("\"app.sizes\":{\"count\":1,\"max\":10,"));
+        assertThat("Meter is not encoded", json, containsString("\"app.hits\":{\"count\":2,"));
+        assertThat("Timer is not encoded in milliseconds", json, containsString("\"app.latency\":{\"count\":1,\"max\":5,"));
+    }
+
+    @Test
+    public void selectMetricsByPrefix() throws IOException {
+        registry.counter("app.requests").inc();
+        registry.counter("apple.requests").inc();
+        registry.counter("other.requests").inc();
+
+        String json = encode("app.");
+        assertThat("Metric with prefix is not encoded", json, containsString("app.requests"));
+        assertThat("Metric without prefix is encoded", json, not(containsString("apple.requests")));
+        assertThat("Metric without prefix is encoded", json, not(containsString("other.requests")));
+
+        registry.remove("app.requests");
+        assertThat("Removed metric is encoded", encode("app."), not(containsString("app.requests")));
+    }
+
+    @Test
+    public void fingerprintChangesWithMetrics() {
+        registry.counter("requests").inc();
+        long fingerprint = fingerprint();
+        assertThat("Fingerprint is not stable", fingerprint(), is(equalTo(fingerprint)));
+
+        registry.counter("requests").inc();
+        assertThat("Fingerprint does not change with counts", fingerprint(), is(not(equalTo(fingerprint))));
+
+        fingerprint = fingerprint();
+        registry.meter("hits");
+        assertThat("Fingerprint does not change with metrics", fingerprint(), is(not(equalTo(fingerprint))));
+    }
+
+    @Test
+    public void fingerprintChangesWithRates() {
+        ManualClock clock = new ManualClock();
+        registry.register("hits", new Meter(clock)).mark();
+        long fingerprint = fingerprint();
+
+        // The count is unchanged while the mean rate decreases
+        clock.tick += TimeUnit.SECONDS.toNanos(10L);
+        assertThat("Fingerprint does not change with rates", fingerprint(), is(not(equalTo(fingerprint))));
+    }
+
+    @Test
+    public void evaluateGaugesOnce() throws IOException {
+        AtomicInteger evaluations = new AtomicInteger();
+        registry.register("gauge", (Gauge<Integer>) evaluations::incrementAndGet);
+
+        JsonEncoder encoder = new JsonEncoder(index.withPrefix(null));
+        long fingerprint = encoder.fingerprint();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AsciiBuffer buffer = new AsciiBuffer(16, output);
+        encoder.encode(buffer);
+        buffer.flush();
+
+        assertThat("Gauge is evaluated more than once", evaluations.get(), is(equalTo(1)));
+        assertThat("Encoded value is not the fingerprinted value", new String(output.toByteArray(), StandardCharsets.UTF_8), containsString("\"gauge\":{\"value\":1}"));
+        assertThat("Fingerprint changes with the gauge value", fingerprint, is(not(equalTo(fingerprint()))));
+    }
+
+    @Test
+    public void matchEntityTags() {
+        assertThat("Entity tag does not match", JsonServlet.matches("\"a\", \"b\"", "\"b\""), is(true));
+        assertThat("Entity tag matches", JsonServlet.matches("\"a\"", "\"b\""), is(false));
+        assertThat("Entity tag matches", JsonServlet.matches(null, "\"b\""), is(false));
+    }
+
+    private long fingerprint() {
+        return new JsonEncoder(index.withPrefix(null)).fingerprint();
+    }
+
+    private String encode(String prefix) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // Small buffer so that the encoding gets flushed to the output several times
+        AsciiBuffer buffer = new AsciiBuffer(16, output);
+        new JsonEncoder(index.withPrefix(prefix)).encode(buffer);
+        buffer.flush();
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static final class ManualClock extends Clock {
+
+        private long tick;
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MappedFileReporterTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private MappedFileReporter reporter;
+
+    private MappedByteBuffer file;
+
+    @Before
+    public void mapFile() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("metrics.map");
+        reporter = MappedFileReporter.forRegistry(registry).withCapacity(8).build(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            file = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        file.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @After
+    public void stopReporter() {
+        reporter.stop();
+    }
+
+    @Test
+    public void writeHeader() {
+        reporter.report();
+
+        assertThat("Magic is incorrect", file.getInt(0), is(equalTo(MappedFileReporter.MAGIC)));
+        assertThat("Version is incorrect", file.getInt(4), is(equalTo(MappedFileReporter.VERSION)));
+        assertThat("Sequence is incorrect", file.getLong(8), is(equalTo(2L)));
+        assertThat("Capacity is incorrect", file.getInt(16), is(equalTo(8)));
+    }
+
+    @Test
+    public void writeMetrics() {
+        registry.counter("counter").inc(3);
+        registry.register("gauge", (Gauge<Double>) () -> 1.5);
+        registry.timer("timer").update(20, TimeUnit.MILLISECONDS);
+        reporter.report();
+
+        assertThat("Counter is incorrect", file.getLong(slot("counter", MappedFileReporter.COUNTER) + 72), is(equalTo(3L)));
+        assertThat("Gauge is incorrect", Double.longBitsToDouble(file.getLong(slot("gauge", MappedFileReporter.GAUGE) + 72)), is(equalTo(1.5)));
+        int timer = slot("timer", MappedFileReporter.TIMER);
+        assertThat("Timer count is incorrect", file.getLong(timer + 72), is(equalTo(1L)));
+        assertThat("Timer max is incorrect", file.getDouble(timer + 88), is(equalTo(20.0)));
+    }
+
+    @Test
+    public void writeChangedFieldsOnly() {
+        registry.counter("unchanged").inc();
+        registry.counter("changed").inc();
+        reporter.report();
+
+        // Tampers with the file so that rewriting the fields gets noticed
+        file.putLong(slot("unchanged", MappedFileReporter.COUNTER) + 72, 42L);
+        registry.counter("changed").inc();
+        reporter.report();
+
+        assertThat("Unchanged counter is rewritten", file.getLong(slot("unchanged", MappedFileReporter.COUNTER) + 72), is(equalTo(42L)));
+        assertThat("Changed counter is not rewritten", file.getLong(slot("changed", MappedFileReporter.COUNTER) + 72), is(equalTo(2L)));
+        assertThat("Sequence is incorrect", file.getLong(8), is(equalTo(4L)));
+    }
+
+    @Test
+    public void freeRemovedMetrics() {
+        registry.counter("removed").inc();
+        reporter.report();
+        registry.remove("removed");
+        reporter.report();
+
+        assertThat("Slot is not freed", slot("removed", MappedFileReporter.COUNTER), is(equalTo(-1)));
+    }
+
+    @Test
+    public void writeOtherGaugesWhenGaugeFails() {
+        registry.register("failing", (Gauge<Double>) () -> {
+            throw new IllegalStateException("Gauge is failing");
+        });
+        registry.register("gauge", (Gauge<Double>) () -> 1.5);
+        reporter.report();
+
+        assertThat("Failing gauge is not NaN", Double.isNaN(Double.longBitsToDouble(file.getLong(slot("failing", MappedFileReporter.GAUGE) + 72))), is(true));
+        assertThat("Gauge is incorrect", Double.longBitsToDouble(file.getLong(slot("gauge", MappedFileReporter.GAUGE) + 72)), is(equalTo(1.5)));
+        assertThat("Sequence is incorrect", file.getLong(8), is(equalTo(2L)));
+    }
+
+    @Test
+    public void completeSequenceWhenReportFails() {
+        Histogram histogram = new Histogram(new UniformReservoir()) {
+            @Override
+            public Snapshot getSnapshot() {
+                throw new IllegalStateException("Snapshot is failing");
+            }
+        };
+        histogram.update(1);
+        registry.register("histogram", histogram);
+        try {
+            reporter.report();
+            fail("No exception has been thrown!");
+        } catch (IllegalStateException cause) {
+            assertThat("Sequence is odd after a failed report", file.getLong(8), is(equalTo(2L)));
+        }
+
+        registry.remove("histogram");
+        reporter.report();
+        assertThat("Sequence is incorrect", file.getLong(8), is(equalTo(4L)));
+    }
+
+    // Returns the offset of the slot with the given name and type, -1 if none
+    private int slot(String name, int type) {
+        for (int slot = 0; slot < file.getInt(16); slot++) {
+            int offset = MappedFileReporter.HEADER_SIZE + slot * MappedFileReporter.SLOT_SIZE;
+            byte[] bytes = new byte[file.getInt(offset + 4)];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = file.get(offset + 8 + i);
+            if (file.getInt(offset) == type && new String(bytes, StandardCharsets.UTF_8).equals(name))
+                return offset;
+        }
+        return -1;
+    }
+}
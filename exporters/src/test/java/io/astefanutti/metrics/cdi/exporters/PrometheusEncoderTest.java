@@ -0,0 +1,100 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class PrometheusEncoderTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private final PrometheusEncoder encoder = new PrometheusEncoder();
+
+    @Test
+    public void encodeMetrics() {
+        registry.counter("requests.active").inc(3);
+        registry.register("queue.size", (com.codahale.metrics.Gauge<Integer>) () -> 5);
+        registry.register("healthy", (com.codahale.metrics.Gauge<Boolean>) () -> true);
+        registry.register("name", (com.codahale.metrics.Gauge<String>) () -> "value");
+        registry.meter("hits").mark(2);
+        registry.histogram("sizes").update(10);
+        registry.timer("latency").update(1500, TimeUnit.MILLISECONDS);
+
+        String text = encode();
+        assertThat("Counter is not encoded", text, containsString("# TYPE requests_active gauge\nrequests_active 3\n"));
+        assertThat("Gauge is not encoded", text, containsString("# TYPE queue_size gauge\nqueue_size 5\n"));
+        assertThat("Boolean gauge is not encoded", text, containsString("healthy 1\n"));
+        assertThat("Non numeric gauge is encoded", text, not(containsString("name")));
+        assertThat("Meter is not encoded", text, containsString("# TYPE hits_total counter\nhits_total 2\n"));
+        assertThat("Histogram is not encoded", text, containsString("# TYPE sizes summary\nsizes{quantile=\"0.5\"} 10\n"));
+        assertThat("Histogram sum and count are not encoded", text, containsString("sizes_sum 10\nsizes_count 1\n"));
+        assertThat("Timer is not encoded in seconds", text, containsString("latency_seconds{quantile=\"0.999\"} 1.5\n"));
+        assertThat("Timer sum is not encoded in seconds", text, containsString("latency_seconds_sum 1.5\n"));
+    }
+
+    @Test
+    public void reuseEncodedNames() {
+        registry.counter("requests").inc();
+        String first = encode();
+        assertThat("Encoding is not stable", encode(), is(equalTo(first)));
+
+        registry.remove("requests");
+        registry.counter("0-invalid").inc(-2);
+        String text = encode();
+        assertThat("Removed metric is encoded", text, not(containsString("requests")));
+        assertThat("Name is not sanitized", text, containsString("_0_invalid -2\n"));
+    }
+
+    @Test
+    public void skipCollidingNames() {
+        registry.counter("a.b").inc(1);
+        registry.counter("a_b").inc(2);
+        registry.counter("x.y-z").inc(3);
+        registry.counter("x.y_z").inc(4);
+        registry.meter("foo").mark(5);
+        registry.counter("foo.total").inc(6);
+        registry.histogram("bar").update(7);
+        registry.counter("bar_count").inc(8);
+
+        String text = encode();
+        assertThat("First colliding counter is not encoded", text, containsString("# TYPE a_b gauge\na_b 1\n"));
+        assertThat("Colliding counter is encoded", text, not(containsString("a_b 2\n")));
+        assertThat("First colliding counter is not encoded", text, containsString("x_y_z 3\n"));
+        assertThat("Colliding counter is encoded", text, not(containsString("x_y_z 4\n")));
+        assertThat("First colliding meter is not encoded", text, containsString("# TYPE foo_total counter\nfoo_total 5\n"));
+        assertThat("Counter colliding with meter is encoded", text, not(containsString("foo_total gauge")));
+        assertThat("Histogram is not encoded", text, containsString("bar_count 1\n"));
+        assertThat("Counter colliding with histogram count is encoded", text, not(containsString("bar_count gauge")));
+
+        registry.remove("a.b");
+        assertThat("Remaining counter is not encoded", encode(), containsString("a_b 2\n"));
+    }
+
+    private String encode() {
+        AsciiBuffer buffer = encoder.encode(registry);
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PrometheusServletTest {
+
+    @Test
+    public void acceptGzipEncoding() {
+        assertThat("Gzip is accepted", PrometheusServlet.acceptsGzip("gzip"), is(equalTo(true)));
+        assertThat("Gzip is accepted", PrometheusServlet.acceptsGzip("deflate, GZIP;q=0.5"), is(equalTo(true)));
+        assertThat("Gzip is accepted", PrometheusServlet.acceptsGzip("identity;q=1, *;q=0.1"), is(equalTo(true)));
+    }
+
+    @Test
+    public void refuseGzipEncoding() {
+        assertThat("Gzip is not accepted", PrometheusServlet.acceptsGzip(null), is(equalTo(false)));
+        assertThat("Gzip is not accepted", PrometheusServlet.acceptsGzip("identity"), is(equalTo(false)));
+        assertThat("Gzip is not accepted", PrometheusServlet.acceptsGzip("gzip;q=0"), is(equalTo(false)));
+        assertThat("Gzip is not accepted", PrometheusServlet.acceptsGzip("gzip ; q=0.0, deflate"), is(equalTo(false)));
+        assertThat("Gzip is not accepted", PrometheusServlet.acceptsGzip("*, gzip;q=0"), is(equalTo(false)));
+        assertThat("Gzip is not accepted", PrometheusServlet.acceptsGzip("br, gzipped"), is(equalTo(false)));
+    }
+}
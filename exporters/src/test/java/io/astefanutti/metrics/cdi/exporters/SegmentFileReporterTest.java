@@ -0,0 +1,178 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class SegmentFileReporterTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private final List<Long> counts = new ArrayList<>();
+
+    @Test
+    public void readRecordsBack() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        SegmentFileReporter reporter = SegmentFileReporter.forRegistry(registry).build(directory);
+        try {
+            for (int i = 0; i < 3; i++) {
+                registry.counter("requests").inc();
+                reporter.report();
+            }
+        } finally {
+            reporter.stop();
+        }
+
+        List<Path> segments = SegmentFileReporter.segments(directory);
+        assertThat("Segments number is incorrect", segments.size(), is(equalTo(1)));
+        assertThat("Segment is not preallocated", Files.size(segments.get(0)), is(equalTo(16L << 20)));
+        assertThat("Records are incorrect", read(directory), contains(1L, 2L, 3L));
+    }
+
+    @Test
+    public void rollAndDeleteOldestSegments() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        SegmentFileReporter reporter = SegmentFileReporter.forRegistry(registry)
+            .withSegmentSize(256)
+            .withRetentionSize(1024)
+            .build(directory);
+        try {
+            for (int i = 0; i < 100; i++) {
+                registry.counter("a.rather.long.metric.name.to.fill.the.segments.quickly").inc();
+                reporter.report();
+            }
+        } finally {
+            reporter.stop();
+        }
+
+        List<Path> segments = SegmentFileReporter.segments(directory);
+        assertThat("Segments are not rolled", segments.size(), is(greaterThan(1)));
+        assertThat("Oldest segments are not deleted", segments.size() * 256, is(lessThan(1024 + 256)));
+
+        List<Long> counts = read(directory);
+        // Each segment can be read on its own while the oldest ones have been deleted
+        assertThat("Records are missing", counts.get(counts.size() - 1), is(equalTo(100L)));
+        assertThat("Oldest records are not deleted", counts.get(0), is(greaterThan(1L)));
+        for (int i = 1; i < counts.size(); i++)
+            assertThat("Records are not in sequence", counts.get(i), is(equalTo(counts.get(i - 1) + 1)));
+    }
+
+    @Test
+    public void resumeAfterExistingSegments() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        for (int run = 0; run < 2; run++) {
+            SegmentFileReporter reporter = SegmentFileReporter.forRegistry(registry).withSegmentSize(1024).build(directory);
+            try {
+                registry.counter("requests").inc();
+                reporter.report();
+            } finally {
+                reporter.stop();
+            }
+        }
+
+        assertThat("Segments number is incorrect", SegmentFileReporter.segments(directory).size(), is(equalTo(2)));
+        assertThat("Records are incorrect", read(directory), contains(1L, 2L));
+    }
+
+    @Test
+    public void stopAtCorruptedRecord() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        SegmentFileReporter reporter = SegmentFileReporter.forRegistry(registry).withSegmentSize(1024).build(directory);
+        try {
+            for (int i = 0; i < 3; i++) {
+                registry.counter("requests").inc();
+                reporter.report();
+            }
+        } finally {
+            reporter.stop();
+        }
+
+        // Corrupts the last byte of the second record as a torn write would
+        Path segment = SegmentFileReporter.segments(directory).get(0);
+        ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int second = SegmentFileReporter.RECORD_HEADER_SIZE + records.getInt(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) ~records.get(second + SegmentFileReporter.RECORD_HEADER_SIZE + records.getInt(second) - 1)}),
+                second + SegmentFileReporter.RECORD_HEADER_SIZE + records.getInt(second) - 1);
+        }
+
+        assertThat("Records are incorrect", read(directory), contains(1L));
+    }
+
+    @Test
+    public void rollAfterFailedReport() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        AtomicBoolean failing = new AtomicBoolean();
+        registry.register("failing", (Gauge<Long>) () -> {
+            if (failing.get())
+                throw new IllegalStateException("failing");
+            return 0L;
+        });
+        SegmentFileReporter reporter = SegmentFileReporter.forRegistry(registry).withSegmentSize(1024).build(directory);
+        try {
+            for (int i = 0; i < 3; i++) {
+                registry.counter("requests").inc();
+                failing.set(i == 1);
+                try {
+                    reporter.report();
+                } catch (IllegalStateException cause) {
+                    assertThat("Report should fail once", i, is(equalTo(1)));
+                }
+            }
+        } finally {
+            reporter.stop();
+        }
+
+        // The frame that follows the failed one starts a new session in a new segment
+        assertThat("Segments number is incorrect", SegmentFileReporter.segments(directory).size(), is(equalTo(2)));
+        assertThat("Records are incorrect", read(directory), contains(1L, 3L));
+    }
+
+    private List<Long> read(Path directory) throws IOException {
+        counts.clear();
+        SegmentFileReader.read(directory, new BinarySnapshotDecoder.Handler() {
+            @Override
+            public void counter(String name, long count) {
+                counts.add(count);
+            }
+        });
+        return new ArrayList<>(counts);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.exporters;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class StatsdReporterTest {
+
+    private static final int MAX_PACKET_SIZE = 64;
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private DatagramSocket agent;
+
+    private StatsdReporter reporter;
+
+    private final List<Integer> sizes = new ArrayList<>();
+
+    @Before
+    public void startAgent() throws IOException {
+        agent = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        agent.setSoTimeout(200);
+        reporter = StatsdReporter.forRegistry(registry)
+            .prefixedWith("app")
+            .withMaxPacketSize(MAX_PACKET_SIZE)
+            // The reporter metrics are left out to keep the received lines deterministic
+            .filter((name, metric) -> !name.startsWith(StatsdReporter.class.getName()))
+            .build(new InetSocketAddress(InetAddress.getLoopbackAddress(), agent.getLocalPort()));
+    }
+
+    @After
+    public void stopAgent() {
+        reporter.stop();
+        agent.close();
+    }
+
+    @Test
+    public void sendCountDifferences() throws IOException {
+        registry.counter("requests").inc(3);
+        registry.meter("hits").mark(2);
+        registry.register("ratio", (Gauge<Double>) () -> 0.5);
+        registry.register("name", (Gauge<String>) () -> "app");
+        reporter.report();
+
+        assertThat("Lines are incorrect", receive(), contains("app.ratio:0.5|g", "app.requests:3|c", "app.hits:2|c"));
+
+        registry.counter("requests").dec();
+        reporter.report();
+
+        assertThat("Lines are incorrect", receive(), contains("app.ratio:0.5|g", "app.requests:-1|c"));
+    }
+
+    @Test
+    public void sendUpdatedTimersOnly() throws IOException {
+        registry.timer("latency").update(20, TimeUnit.MILLISECONDS);
+        reporter.report();
+
+        assertThat("Timer lines are incorrect", receive(), hasItems("app.latency:1|c", "app.latency.max:20|g", "app.latency.p99:20|g"));
+
+        reporter.report();
+        assertThat("Unchanged timer is sent", receive(), not(hasItem("app.latency.max:20|g")));
+    }
+
+    @Test
+    public void batchLinesIntoDatagrams() throws IOException {
+        for (int i = 0; i < 20; i++)
+            registry.counter("counter." + i).inc(i + 1);
+        reporter.report();
+
+        List<String> lines = receive();
+        assertThat("Lines number is incorrect", lines.size(), is(equalTo(20)));
+        assertThat("Datagrams are not batched", sizes.size(), is(lessThanOrEqualTo(10)));
+        assertThat("Datagrams exceed the maximum size", sizes, everyItem(is(lessThanOrEqualTo(MAX_PACKET_SIZE))));
+    }
+
+    @Test
+    public void countDroppedPackets() throws IOException {
+        registry.counter("a-name-too-long-to-fit-into-a-single-datagram-of-the-maximum-packet-size").inc();
+        reporter.report();
+
+        assertThat("Oversized line is sent", receive(), is(empty()));
+        assertThat("Dropped packets count is incorrect", registry.counter(MetricRegistry.name(StatsdReporter.class, "dropped-packets")).getCount(), is(equalTo(1L)));
+        assertThat("Flush latency is not recorded", registry.timer(MetricRegistry.name(StatsdReporter.class, "flush-latency")).getCount(), is(greaterThan(0L)));
+    }
+
+    @Test
+    public void appendDogStatsdTags() throws IOException {
+        StatsdReporter tagged = StatsdReporter.forRegistry(registry)
+            .withTags("env:test", "zone:a")
+            .filter(MetricFilter.startsWith("requests"))
+            .build(new InetSocketAddress(InetAddress.getLoopbackAddress(), agent.getLocalPort()));
+        try {
+            registry.counter("requests").inc();
+            tagged.report();
+            assertThat("Tags are not appended", receive(), contains("requests:1|c|#env:test,zone:a"));
+        } finally {
+            tagged.stop();
+        }
+    }
+
+    private List<String> receive() throws IOException {
+        List<String> lines = new ArrayList<>();
+        sizes.clear();
+        byte[] buffer = new byte[1024];
+        while (true) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                agent.receive(packet);
+            } catch (SocketTimeoutException timeout) {
+                return lines;
+            }
+            sizes.add(packet.getLength());
+            lines.addAll(Arrays.asList(new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8).split("\n")));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Aggregates the values of a {@link com.codahale.metrics.annotation.Gauge} method over all the live
+ * instances of the declaring bean into a single gauge, instead of registering one gauge per instance.
+ * <p>
+ * The gauge method must return a number. The aggregated value is computed each time the gauge is read.
+ *
+ * @since 1.7.0
+ */
+@Documented
+@Target({ ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Aggregate {
+
+    /**
+     * @return the function used to aggregate the values of the gauge method over the live bean instances
+     */
+    Function value() default Function.SUM;
+
+    enum Function {
+        /**
+         * The sum of the values, zero when there is no live instance.
+         */
+        SUM,
+        /**
+         * The greatest value, {@code null} when there is no live instance.
+         */
+        MAX,
+        /**
+         * The least value, {@code null} when there is no live instance.
+         */
+        MIN,
+        /**
+         * The arithmetic mean of the values, {@code null} when there is no live instance.
+         */
+        AVERAGE
+    }
+}
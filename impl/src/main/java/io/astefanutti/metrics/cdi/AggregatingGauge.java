@@ -0,0 +1,150 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Gauge;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+@Vetoed
+/* package-private */ final class AggregatingGauge implements Gauge<Number> {
+
+    private final Method method;
+
+    private final Function<Object, Object> accessor;
+
+    private final Aggregate.Function function;
+
+    // The live instances are weakly referenced and compared by identity so that the gauge does not prevent them from being garbage collected
+    private final Set<IdentityReference> instances = ConcurrentHashMap.newKeySet();
+
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    AggregatingGauge(Method method, Aggregate.Function function) {
+        this.method = method;
+        this.accessor = GeneratedMetadata.gauge(method);
+        this.function = function;
+    }
+
+    void add(Object instance) {
+        expunge();
+        instances.add(new IdentityReference(instance, collected));
+    }
+
+    void remove(Object instance) {
+        expunge();
+        instances.remove(new IdentityReference(instance, null));
+    }
+
+    private void expunge() {
+        for (Reference<?> reference; (reference = collected.poll()) != null; )
+            instances.remove(reference);
+    }
+
+    @Override
+    public Number getValue() {
+        long count = 0;
+        boolean integral = true;
+        long longValue = 0;
+        double doubleValue = 0;
+        expunge();
+        for (IdentityReference reference : instances) {
+            Object instance = reference.get();
+            if (instance == null)
+                continue;
+            Number value = value(instance);
+            if (value == null)
+                continue;
+
+            integral &= value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+            if (count == 0) {
+                longValue = value.longValue();
+                doubleValue = value.doubleValue();
+            } else {
+                longValue = aggregate(longValue, value.longValue());
+                doubleValue = aggregate(doubleValue, value.doubleValue());
+            }
+            count++;
+        }
+
+        if (count == 0)
+            return function == Aggregate.Function.SUM ? 0L : null;
+        else if (function == Aggregate.Function.AVERAGE)
+            return doubleValue / count;
+        else
+            return integral ? (Number) longValue : (Number) doubleValue;
+    }
+
+    private long aggregate(long aggregate, long value) {
+        if (function == Aggregate.Function.MAX)
+            return Math.max(aggregate, value);
+        else if (function == Aggregate.Function.MIN)
+            return Math.min(aggregate, value);
+        else
+            return aggregate + value;
+    }
+
+    private double aggregate(double aggregate, double value) {
+        if (function == Aggregate.Function.MAX)
+            return Math.max(aggregate, value);
+        else if (function == Aggregate.Function.MIN)
+            return Math.min(aggregate, value);
+        else
+            return aggregate + value;
+    }
+
+    private Number value(Object instance) {
+        Object value = accessor.apply(instance);
+        if (value == null || value instanceof Number)
+            return (Number) value;
+        else
+            throw new IllegalStateException("Aggregated gauge method [" + method + "] returned a non-numeric value [" + value + "]");
+    }
+
+    // Compares the referents by identity, and the cleared references by themselves so that they can be expunged
+    @Vetoed
+    private static final class IdentityReference extends WeakReference<Object> {
+
+        private final int hash;
+
+        private IdentityReference(Object instance, ReferenceQueue<Object> queue) {
+            super(instance, queue);
+            this.hash = System.identityHashCode(instance);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object)
+                return true;
+            if (!(object instanceof IdentityReference))
+                return false;
+            Object instance = get();
+            return instance != null && instance == ((IdentityReference) object).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -28,9 +28,16 @@ import java.util.Set;
 
     private final Set<Annotation> annotations;
 
+    private final Set<Class<? extends Annotation>> removedAnnotations;
+
     AnnotatedDecorator(Annotated decorated, Set<Annotation> annotations) {
+        this(decorated, annotations, Collections.emptySet());
+    }
+
+    AnnotatedDecorator(Annotated decorated, Set<Annotation> annotations, Set<Class<? extends Annotation>> removedAnnotations) {
         this.decorated = decorated;
         this.annotations = annotations;
+        this.removedAnnotations = removedAnnotations;
     }
 
     @Override
@@ -48,6 +55,8 @@ import java.util.Set;
         T annotation = getDecoratingAnnotation(annotationType);
         if (annotation != null)
             return annotation;
+        else if (removedAnnotations.contains(annotationType))
+            return null;
         else
             return decorated.getAnnotation(annotationType);
     }
@@ -55,13 +64,15 @@ import java.util.Set;
     @Override
     public Set<Annotation> getAnnotations() {
         Set<Annotation> annotations = new HashSet<>(this.annotations);
-        annotations.addAll(decorated.getAnnotations());
+        for (Annotation annotation : decorated.getAnnotations())
+            if (!removedAnnotations.contains(annotation.annotationType()))
+                annotations.add(annotation);
         return Collections.unmodifiableSet(annotations);
     }
 
     @Override
     public boolean isAnnotationPresent(Class<? extends Annotation> annotationType) {
-        return getDecoratingAnnotation(annotationType) != null || decorated.isAnnotationPresent(annotationType);
+        return getDecoratingAnnotation(annotationType) != null || !removedAnnotations.contains(annotationType) && decorated.isAnnotationPresent(annotationType);
     }
 
     @SuppressWarnings("unchecked")
@@ -22,6 +22,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /* package-private */ final class AnnotatedMethodDecorator<X> extends AnnotatedDecorator implements AnnotatedMethod<X> {
 
@@ -32,6 +33,11 @@ import java.util.List;
         this.decoratedMethod = decoratedMethod;
     }
 
+    AnnotatedMethodDecorator(AnnotatedMethod<X> decoratedMethod, Set<Class<? extends Annotation>> removedAnnotations) {
+        super(decoratedMethod, Collections.emptySet(), removedAnnotations);
+        this.decoratedMethod = decoratedMethod;
+    }
+
     @Override
     public Method getJavaMember() {
         return decoratedMethod.getJavaMember();
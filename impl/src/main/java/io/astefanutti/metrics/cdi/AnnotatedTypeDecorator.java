@@ -30,14 +30,21 @@ import java.util.Set;
 
     private final Set<AnnotatedMethod<? super X>> decoratedMethods;
 
+    private final Set<AnnotatedConstructor<X>> decoratedConstructors;
+
     AnnotatedTypeDecorator(AnnotatedType<X> decoratedType, Annotation decoratingAnnotation) {
         this(decoratedType, decoratingAnnotation, Collections.<AnnotatedMethod<? super X>>emptySet());
     }
 
     AnnotatedTypeDecorator(AnnotatedType<X> decoratedType, Annotation decoratingAnnotation, Set<AnnotatedMethod<? super X>> decoratedMethods) {
-        super(decoratedType, Collections.singleton(decoratingAnnotation));
+        this(decoratedType, Collections.singleton(decoratingAnnotation), Collections.emptySet(), decoratedMethods, Collections.emptySet());
+    }
+
+    AnnotatedTypeDecorator(AnnotatedType<X> decoratedType, Set<Annotation> decoratingAnnotations, Set<Class<? extends Annotation>> removedAnnotations, Set<AnnotatedMethod<? super X>> decoratedMethods, Set<AnnotatedConstructor<X>> decoratedConstructors) {
+        super(decoratedType, decoratingAnnotations, removedAnnotations);
         this.decoratedType = decoratedType;
         this.decoratedMethods = decoratedMethods;
+        this.decoratedConstructors = decoratedConstructors;
     }
 
     @Override
@@ -47,7 +54,13 @@ import java.util.Set;
 
     @Override
     public Set<AnnotatedConstructor<X>> getConstructors() {
-        return decoratedType.getConstructors();
+        Set<AnnotatedConstructor<X>> constructors = new HashSet<>(decoratedType.getConstructors());
+        for (AnnotatedConstructor<X> constructor : decoratedConstructors) {
+            constructors.remove(constructor);
+            constructors.add(constructor);
+        }
+
+        return Collections.unmodifiableSet(constructors);
     }
 
     @Override
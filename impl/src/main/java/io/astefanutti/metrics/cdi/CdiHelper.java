@@ -16,6 +16,7 @@
 package io.astefanutti.metrics.cdi;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.HashSet;
 import java.util.Set;
@@ -58,6 +59,19 @@ final class CdiHelper {
         return (T) manager.getReference(bean, type, manager.createCreationalContext(bean));
     }
 
+    static Class<?> getRawType(Type type) {
+        if (type instanceof Class)
+            return (Class<?>) type;
+        else if (type instanceof ParameterizedType)
+            return getRawType(((ParameterizedType) type).getRawType());
+        else
+            return Object.class;
+    }
+
+    static boolean hasParameters(AnnotatedMember<?> member) {
+        return member instanceof AnnotatedMethod && !((AnnotatedMethod<?>) member).getParameters().isEmpty();
+    }
+
     static boolean hasInjectionPoints(AnnotatedMember<?> member) {
         if (!(member instanceof AnnotatedMethod))
             return false;
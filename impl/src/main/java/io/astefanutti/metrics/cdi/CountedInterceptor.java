@@ -16,7 +16,6 @@
 package io.astefanutti.metrics.cdi;
 
 import com.codahale.metrics.Counter;
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.Counted;
 
 import javax.annotation.Priority;
@@ -35,17 +34,11 @@ import javax.interceptor.AroundTimeout;
 @Priority(Interceptor.Priority.LIBRARY_BEFORE + 10)
 /* package-private */ class CountedInterceptor {
 
-    private final Bean<?> bean;
-
-    private final MetricRegistry registry;
-
-    private final MetricResolver resolver;
+    private final InterceptionPlan plan;
 
     @Inject
-    private CountedInterceptor(@Intercepted Bean<?> bean, MetricRegistry registry, MetricResolver resolver) {
-        this.bean = bean;
-        this.registry = registry;
-        this.resolver = resolver;
+    private CountedInterceptor(@Intercepted Bean<?> bean, InterceptionPlans plans) {
+        this.plan = plans.of(bean.getBeanClass());
     }
 
     @AroundConstruct
@@ -64,16 +57,16 @@ import javax.interceptor.AroundTimeout;
     }
 
     private Object countedCallable(InvocationContext context, Executable executable) throws Exception {
-        MetricResolver.Of<Counted> counted = resolver.counted(bean.getBeanClass(), executable);
-        Counter counter = (Counter) registry.getMetrics().get(counted.metricName());
-        if (counter == null)
-            throw new IllegalStateException("No counter with name [" + counted.metricName() + "] found in registry [" + registry + "]");
+        InterceptionPlan.Binding<Counter, Counted> counted = plan.counted(executable);
+        if (!counted.isEnabled())
+            return context.proceed();
 
+        Counter counter = counted.metric();
         counter.inc();
         try {
             return context.proceed();
         } finally {
-            if (!counted.metricAnnotation().monotonic())
+            if (!counted.annotation().monotonic())
                 counter.dec();
         }
     }
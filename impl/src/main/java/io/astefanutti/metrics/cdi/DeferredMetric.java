@@ -0,0 +1,274 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Vetoed
+/* package-private */ final class DeferredMetric {
+
+    private DeferredMetric() {
+    }
+
+    // Returns a metric of the same kind that delegates to the supplied metric, supplied on first access, or nothing for metric types that cannot be deferred
+    static Optional<Metric> of(Class<?> type, Supplier<? extends Metric> supplier) {
+        if (Gauge.class.isAssignableFrom(type))
+            return Optional.of(new DeferredGauge(new Deferred<>(supplier)));
+        else if (Counter.class.isAssignableFrom(type))
+            return Optional.of(new DeferredCounter(new Deferred<>(supplier)));
+        else if (Histogram.class.isAssignableFrom(type))
+            return Optional.of(new DeferredHistogram(new Deferred<>(supplier)));
+        else if (Meter.class.isAssignableFrom(type))
+            return Optional.of(new DeferredMeter(new Deferred<>(supplier)));
+        else if (Timer.class.isAssignableFrom(type))
+            return Optional.of(new DeferredTimer(new Deferred<>(supplier)));
+        else
+            return Optional.empty();
+    }
+
+    @Vetoed
+    static final class Deferred<T> implements Supplier<T> {
+
+        private final Supplier<? extends Metric> supplier;
+
+        private volatile T metric;
+
+        Deferred(Supplier<? extends Metric> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get() {
+            T metric = this.metric;
+            if (metric == null) {
+                synchronized (this) {
+                    metric = this.metric;
+                    if (metric == null)
+                        this.metric = metric = (T) supplier.get();
+                }
+            }
+            return metric;
+        }
+    }
+
+    @Vetoed
+    static final class DeferredGauge implements Gauge<Object> {
+
+        private final Supplier<Gauge<?>> gauge;
+
+        DeferredGauge(Supplier<Gauge<?>> gauge) {
+            this.gauge = gauge;
+        }
+
+        @Override
+        public Object getValue() {
+            return gauge.get().getValue();
+        }
+    }
+
+    @Vetoed
+    static final class DeferredCounter extends Counter {
+
+        private final Supplier<Counter> counter;
+
+        DeferredCounter(Supplier<Counter> counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public void inc() {
+            counter.get().inc();
+        }
+
+        @Override
+        public void inc(long n) {
+            counter.get().inc(n);
+        }
+
+        @Override
+        public void dec() {
+            counter.get().dec();
+        }
+
+        @Override
+        public void dec(long n) {
+            counter.get().dec(n);
+        }
+
+        @Override
+        public long getCount() {
+            return counter.get().getCount();
+        }
+    }
+
+    @Vetoed
+    static final class DeferredHistogram extends Histogram {
+
+        private final Supplier<Histogram> histogram;
+
+        DeferredHistogram(Supplier<Histogram> histogram) {
+            // The reservoir is never used as all the calls are forwarded
+            super(null);
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void update(int value) {
+            histogram.get().update(value);
+        }
+
+        @Override
+        public void update(long value) {
+            histogram.get().update(value);
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.get().getCount();
+        }
+
+        @Override
+        public Snapshot getSnapshot() {
+            return histogram.get().getSnapshot();
+        }
+    }
+
+    @Vetoed
+    static final class DeferredMeter extends Meter {
+
+        private final Supplier<Meter> meter;
+
+        DeferredMeter(Supplier<Meter> meter) {
+            this.meter = meter;
+        }
+
+        @Override
+        public void mark() {
+            meter.get().mark();
+        }
+
+        @Override
+        public void mark(long n) {
+            meter.get().mark(n);
+        }
+
+        @Override
+        public long getCount() {
+            return meter.get().getCount();
+        }
+
+        @Override
+        public double getFifteenMinuteRate() {
+            return meter.get().getFifteenMinuteRate();
+        }
+
+        @Override
+        public double getFiveMinuteRate() {
+            return meter.get().getFiveMinuteRate();
+        }
+
+        @Override
+        public double getMeanRate() {
+            return meter.get().getMeanRate();
+        }
+
+        @Override
+        public double getOneMinuteRate() {
+            return meter.get().getOneMinuteRate();
+        }
+    }
+
+    @Vetoed
+    static final class DeferredTimer extends Timer {
+
+        private final Supplier<Timer> timer;
+
+        DeferredTimer(Supplier<Timer> timer) {
+            // The reservoir is never used as all the calls are forwarded
+            super(null, Clock.defaultClock());
+            this.timer = timer;
+        }
+
+        @Override
+        public void update(long duration, TimeUnit unit) {
+            timer.get().update(duration, unit);
+        }
+
+        @Override
+        public <T> T time(Callable<T> event) throws Exception {
+            return timer.get().time(event);
+        }
+
+        @Override
+        public <T> T timeSupplier(Supplier<T> event) {
+            return timer.get().timeSupplier(event);
+        }
+
+        @Override
+        public void time(Runnable event) {
+            timer.get().time(event);
+        }
+
+        @Override
+        public Context time() {
+            return timer.get().time();
+        }
+
+        @Override
+        public long getCount() {
+            return timer.get().getCount();
+        }
+
+        @Override
+        public double getFifteenMinuteRate() {
+            return timer.get().getFifteenMinuteRate();
+        }
+
+        @Override
+        public double getFiveMinuteRate() {
+            return timer.get().getFiveMinuteRate();
+        }
+
+        @Override
+        public double getMeanRate() {
+            return timer.get().getMeanRate();
+        }
+
+        @Override
+        public double getOneMinuteRate() {
+            return timer.get().getOneMinuteRate();
+        }
+
+        @Override
+        public Snapshot getSnapshot() {
+            return timer.get().getSnapshot();
+        }
+    }
+}
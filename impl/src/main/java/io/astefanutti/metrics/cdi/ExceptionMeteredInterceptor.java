@@ -16,7 +16,6 @@
 package io.astefanutti.metrics.cdi;
 
 import com.codahale.metrics.Meter;
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.ExceptionMetered;
 
 import javax.annotation.Priority;
@@ -34,17 +33,11 @@ import java.lang.reflect.Executable;
 @Priority(Interceptor.Priority.LIBRARY_BEFORE + 10)
 /* package-private */ class ExceptionMeteredInterceptor {
 
-    private final Bean<?> bean;
-
-    private final MetricRegistry registry;
-
-    private final MetricResolver resolver;
+    private final InterceptionPlan plan;
 
     @Inject
-    private ExceptionMeteredInterceptor(@Intercepted Bean<?> bean, MetricRegistry registry, MetricResolver resolver) {
-        this.bean = bean;
-        this.registry = registry;
-        this.resolver = resolver;
+    private ExceptionMeteredInterceptor(@Intercepted Bean<?> bean, InterceptionPlans plans) {
+        this.plan = plans.of(bean.getBeanClass());
     }
 
     @AroundConstruct
@@ -58,16 +51,15 @@ import java.lang.reflect.Executable;
     }
 
     private Object meteredCallable(InvocationContext context, Executable executable) throws Throwable {
-        MetricResolver.Of<ExceptionMetered> exceptionMetered = resolver.exceptionMetered(bean.getBeanClass(), executable);
-        Meter meter = (Meter) registry.getMetrics().get(exceptionMetered.metricName());
-        if (meter == null)
-            throw new IllegalStateException("No meter with name [" + exceptionMetered.metricName() + "] found in registry [" + registry + "]");
+        InterceptionPlan.Binding<Meter, ExceptionMetered> exceptionMetered = plan.exceptionMetered(executable);
+        if (!exceptionMetered.isEnabled())
+            return context.proceed();
 
         try {
             return context.proceed();
         } catch (Throwable throwable) {
-            if (exceptionMetered.metricAnnotation().cause().isInstance(throwable))
-                meter.mark();
+            if (exceptionMetered.annotation().cause().isInstance(throwable))
+                exceptionMetered.metric().mark();
 
             throw throwable;
         }
@@ -0,0 +1,124 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Excluded from the Java 8 builds and only looked up by name for the methods returning a Flow publisher
+@Vetoed
+/* package-private */ final class FlowPublisher<T> implements Flow.Publisher<T> {
+
+    private final Flow.Publisher<T> publisher;
+
+    private final PublisherMetrics metrics;
+
+    private FlowPublisher(Flow.Publisher<T> publisher, PublisherMetrics metrics) {
+        this.publisher = publisher;
+        this.metrics = metrics;
+    }
+
+    static Object decorate(Object publisher, PublisherMetrics metrics) {
+        return new FlowPublisher<>((Flow.Publisher<?>) publisher, metrics);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        publisher.subscribe(new MeasuredSubscriber<>(subscriber, metrics));
+    }
+
+    @Vetoed
+    private static final class MeasuredSubscriber<T> implements Flow.Subscriber<T>, Flow.Subscription {
+
+        // Bounds the number of items that are not yet marked on the meter
+        private static final int MARK_BATCH = 1024;
+
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private final PublisherMetrics metrics;
+
+        private final long start;
+
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        private Flow.Subscription subscription;
+
+        // The onNext signals are serial so that the first item gets detected without synchronization
+        private long items;
+
+        // Drained atomically as the cancellation may come from another thread than the onNext signals
+        private final AtomicInteger unmarked = new AtomicInteger();
+
+        private MeasuredSubscriber(Flow.Subscriber<? super T> subscriber, PublisherMetrics metrics) {
+            this.subscriber = subscriber;
+            this.metrics = metrics;
+            this.start = metrics.start();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (items++ == 0)
+                metrics.firstItem(start);
+            if (unmarked.incrementAndGet() >= MARK_BATCH)
+                mark();
+            subscriber.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (terminated.compareAndSet(false, true)) {
+                mark();
+                metrics.failed(start);
+            }
+            subscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (terminated.compareAndSet(false, true)) {
+                mark();
+                metrics.completed(start);
+            }
+            subscriber.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            subscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            if (terminated.compareAndSet(false, true)) {
+                mark();
+                metrics.cancelled(start);
+            }
+            subscription.cancel();
+        }
+
+        private void mark() {
+            metrics.items(unmarked.getAndSet(0));
+        }
+    }
+}
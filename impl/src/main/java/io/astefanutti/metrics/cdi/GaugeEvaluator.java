@@ -0,0 +1,187 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Vetoed;
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static io.astefanutti.metrics.cdi.MetricsParameter.GaugeTimeout;
+
+/**
+ * Evaluates the gauges of the {@link MetricRegistry} bean in parallel so that slow gauges do not delay reporting.
+ * <p>
+ * Each gauge is given until the configured {@link MetricsConfiguration#gaugeTimeout(long, TimeUnit) timeout}
+ * to return its value. A gauge that misses it is reported with the last value it returned, if any, and is
+ * counted in the {@code io.astefanutti.metrics.cdi.GaugeEvaluator.timeouts} counter. A gauge that throws an
+ * exception is reported with the last value it returned as well, is counted in the
+ * {@code io.astefanutti.metrics.cdi.GaugeEvaluator.errors} counter and has its failure logged. A gauge still being
+ * evaluated is not evaluated again until its pending evaluation completes, and is reported with its last value meanwhile,
+ * so that hung gauges do not hold more than one thread each nor delay the evaluation of the other gauges.
+ * <p>
+ * The returned gauges hold the evaluated values so that they can be passed to a reporter, e.g.:
+ * <pre>{@code
+ * reporter.report(evaluator.getGauges(), registry.getCounters(), registry.getHistograms(), registry.getMeters(), registry.getTimers());
+ * }</pre>
+ *
+ * @since 1.7.0
+ */
+@ApplicationScoped
+public class GaugeEvaluator {
+
+    private static final Logger LOGGER = Logger.getLogger(GaugeEvaluator.class.getName());
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(1L);
+
+    private final ConcurrentMap<String, Evaluation> evaluations = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<>();
+
+    // The gauges whose last evaluation failed, so that a failure is only logged as a warning when it starts
+    private final Set<String> failures = ConcurrentHashMap.newKeySet();
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private MetricsExtension extension;
+
+    private ExecutorService pool;
+
+    private Counter timeouts;
+
+    private Counter errors;
+
+    @PostConstruct
+    private void init() {
+        // The pool grows past the hung gauges, that each hold at most one thread as they are not evaluated again while pending
+        AtomicInteger count = new AtomicInteger();
+        pool = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-cdi-gauge-evaluator-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timeouts = registry.counter(MetricRegistry.name(GaugeEvaluator.class, "timeouts"));
+        errors = registry.counter(MetricRegistry.name(GaugeEvaluator.class, "errors"));
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @return the values of all the gauges of the registry, as constant gauges sorted by name
+     */
+    public SortedMap<String, Gauge> getGauges() {
+        return getGauges(MetricFilter.ALL);
+    }
+
+    /**
+     * @param filter the filter that the gauges must match
+     * @return the values of the gauges of the registry that match the filter, as constant gauges sorted by name
+     */
+    @SuppressWarnings("unchecked")
+    public SortedMap<String, Gauge> getGauges(MetricFilter filter) {
+        Duration timeout = extension.<Duration>getParameter(GaugeTimeout).orElse(DEFAULT_TIMEOUT);
+        SortedMap<String, Gauge> gauges = registry.getGauges(filter);
+
+        // Submits all the evaluations before waiting for any of them
+        Map<String, Evaluation> pending = new TreeMap<>();
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet())
+            pending.put(gauge.getKey(), evaluate(gauge.getKey(), gauge.getValue(), timeout));
+
+        SortedMap<String, Gauge> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Evaluation> evaluation : pending.entrySet()) {
+            Object value = await(evaluation.getKey(), evaluation.getValue());
+            snapshot.put(evaluation.getKey(), (Gauge<Object>) () -> value);
+        }
+
+        // Forgets about the gauges that have been removed from the registry
+        if (filter == MetricFilter.ALL) {
+            evaluations.keySet().retainAll(gauges.keySet());
+            values.keySet().retainAll(gauges.keySet());
+            failures.retainAll(gauges.keySet());
+        }
+        return snapshot;
+    }
+
+    // A gauge still pending from a previous call keeps its deadline, so that it is reported with its last value right away
+    private Evaluation evaluate(String name, Gauge<?> gauge, Duration timeout) {
+        return evaluations.compute(name, (key, evaluation) -> evaluation == null || evaluation.value.isDone() ? new Evaluation(CompletableFuture.supplyAsync(gauge::getValue, pool), System.nanoTime() + timeout.toNanos()) : evaluation);
+    }
+
+    private Object await(String name, Evaluation evaluation) {
+        try {
+            Object value = evaluation.value.get(Math.max(0L, evaluation.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (value != null)
+                values.put(name, value);
+            else
+                values.remove(name);
+            if (failures.remove(name))
+                LOGGER.log(Level.INFO, "Gauge [{0}] recovered", name);
+            return value;
+        } catch (TimeoutException cause) {
+            timeouts.inc();
+            return values.get(name);
+        } catch (ExecutionException cause) {
+            errors.inc();
+            Object value = values.get(name);
+            LOGGER.log(failures.add(name) ? Level.WARNING : Level.FINE, "Gauge [" + name + "] failed, reporting its last value [" + value + "]", cause.getCause());
+            return value;
+        } catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            return values.get(name);
+        }
+    }
+
+    // Each gauge has its own deadline so that a slow gauge does not consume the timeout of the others
+    @Vetoed
+    private static final class Evaluation {
+
+        private final CompletableFuture<Object> value;
+
+        private final long deadline;
+
+        private Evaluation(CompletableFuture<Object> value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.MetricRegistry;
+
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.Vetoed;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.InjectionPoint;
+import javax.enterprise.inject.spi.InjectionTarget;
+import java.util.Set;
+
+import static io.astefanutti.metrics.cdi.CdiHelper.getReference;
+
+@Vetoed
+/* package-private */ final class GaugesInjectionTarget<T> implements InjectionTarget<T> {
+
+    private final InjectionTarget<T> target;
+
+    private final Set<String> gauges;
+
+    private final BeanManager manager;
+
+    GaugesInjectionTarget(InjectionTarget<T> target, Set<String> gauges, BeanManager manager) {
+        this.target = target;
+        this.gauges = gauges;
+        this.manager = manager;
+    }
+
+    @Override
+    public void inject(T instance, CreationalContext<T> context) {
+        target.inject(instance, context);
+    }
+
+    @Override
+    public void postConstruct(T instance) {
+        target.postConstruct(instance);
+    }
+
+    @Override
+    public void preDestroy(T instance) {
+        try {
+            target.preDestroy(instance);
+        } finally {
+            if (!gauges.isEmpty())
+                MetricsInterceptor.unregisterGauges(getReference(manager, MetricRegistry.class), gauges, instance);
+        }
+    }
+
+    @Override
+    public T produce(CreationalContext<T> context) {
+        return target.produce(context);
+    }
+
+    @Override
+    public void dispose(T instance) {
+        target.dispose(instance);
+    }
+
+    @Override
+    public Set<InjectionPoint> getInjectionPoints() {
+        return target.getInjectionPoints();
+    }
+}
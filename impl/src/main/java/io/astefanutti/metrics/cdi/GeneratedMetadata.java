@@ -0,0 +1,85 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+// Loads the metrics metadata generated at compile time, if any
+@Vetoed
+/* package-private */ final class GeneratedMetadata {
+
+    static final String SUFFIX = "_MetricsMetadata";
+
+    private static final Cache CACHE = new Cache();
+
+    private GeneratedMetadata() {
+    }
+
+    static Optional<MetricsMetadata> of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    static String member(Executable executable) {
+        StringJoiner member = new StringJoiner(",", (executable instanceof Constructor ? "<init>" : executable.getName()) + "(", ")");
+        for (Class<?> parameter : executable.getParameterTypes())
+            member.add(parameter.getTypeName());
+        return member.toString();
+    }
+
+    // Returns the gauge accessor generated at compile time if any rather than reflection
+    static Function<Object, Object> gauge(Method method) {
+        return of(method.getDeclaringClass())
+            .map(metadata -> metadata.gauge(member(method)))
+            .orElseGet(() -> {
+                method.setAccessible(true);
+                return instance -> invoke(method, instance);
+            });
+    }
+
+    private static Object invoke(Method method, Object object) {
+        try {
+            return method.invoke(object);
+        } catch (IllegalAccessException | InvocationTargetException cause) {
+            throw new IllegalStateException("Error while calling method [" + method + "]", cause);
+        }
+    }
+
+    @Vetoed
+    private static final class Cache extends ClassValue<Optional<MetricsMetadata>> {
+
+        Cache() {
+        }
+
+        @Override
+        protected Optional<MetricsMetadata> computeValue(Class<?> type) {
+            try {
+                Class<?> metadata = Class.forName(type.getName() + SUFFIX, true, type.getClassLoader());
+                return Optional.of((MetricsMetadata) metadata.getConstructor().newInstance());
+            } catch (ClassNotFoundException | LinkageError cause) {
+                return Optional.empty();
+            } catch (ReflectiveOperationException | ClassCastException cause) {
+                throw new IllegalStateException("Error while loading metrics metadata of [" + type + "]", cause);
+            }
+        }
+    }
+}
@@ -15,8 +15,15 @@
  */
 package io.astefanutti.metrics.cdi;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.enterprise.event.Observes;
 import javax.enterprise.inject.spi.AfterBeanDiscovery;
@@ -24,6 +31,7 @@ import javax.enterprise.inject.spi.AfterDeploymentValidation;
 import javax.enterprise.inject.spi.AnnotatedMember;
 import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.BeforeShutdown;
 import javax.enterprise.inject.spi.Extension;
 import javax.enterprise.inject.spi.ProcessProducerField;
 import javax.enterprise.inject.spi.ProcessProducerMethod;
@@ -33,11 +41,15 @@ import com.codahale.metrics.health.HealthCheckRegistry;
 
 import static io.astefanutti.metrics.cdi.CdiHelper.getReference;
 import static io.astefanutti.metrics.cdi.CdiHelper.hasInjectionPoints;
+import static io.astefanutti.metrics.cdi.MetricsParameter.HealthCheckPeriod;
+import static io.astefanutti.metrics.cdi.MetricsParameter.HealthCheckStaleness;
 
 public class HealthCheckExtension implements Extension {
 
     private final Map<Bean<?>, AnnotatedMember<?>> healthChecks = new HashMap<>();
 
+    private ScheduledExecutorService executor;
+
     private void healthCheckProducerField(@Observes ProcessProducerField<? extends HealthCheck, ?> ppf) {
         healthChecks.put(ppf.getBean(), ppf.getAnnotatedProducerField());
     }
@@ -52,8 +64,12 @@ public class HealthCheckExtension implements Extension {
     }
 
     private void configuration(@Observes AfterDeploymentValidation adv, BeanManager manager) {
-        // Register detected HealthChecks
-        HealthCheckRegistry healthCheckRegistry = getReference(manager, HealthCheckRegistry.class);
+        // Make sure the configuration event has been fired
+        MetricsExtension extension = manager.getExtension(MetricsExtension.class);
+        extension.fireConfigurationEvent(manager);
+
+        // Collect detected HealthChecks whose contextual instances get resolved on first execution
+        Map<String, HealthCheck> checks = new LinkedHashMap<>();
 
         // Produced Beans.
         for (Map.Entry<Bean<?>, AnnotatedMember<?>> bean : healthChecks.entrySet()) {
@@ -65,7 +81,7 @@ public class HealthCheckExtension implements Extension {
             if (name == null) {
                 name = bean.getKey().getBeanClass().getName() + "." + bean.getValue().getJavaMember().getName();
             }
-            healthCheckRegistry.register(name, (HealthCheck) getReference(manager, bean.getValue().getBaseType(), bean.getKey()));
+            checks.put(name, LazyHealthCheck.of(manager, bean.getKey(), bean.getValue().getBaseType()));
         }
 
         // Declarative Scoped Beans
@@ -77,9 +93,37 @@ public class HealthCheckExtension implements Extension {
             if (name == null) {
                 name = bean.getBeanClass().getName();
             }
-            healthCheckRegistry.register(name, (HealthCheck) manager.getReference(bean, bean.getBeanClass(), manager.createCreationalContext(bean)));
+            checks.put(name, LazyHealthCheck.of(manager, bean, bean.getBeanClass()));
         }
+
+        // Register detected HealthChecks
+        HealthCheckRegistry healthCheckRegistry = getReference(manager, HealthCheckRegistry.class);
+        Optional<Duration> period = extension.getParameter(HealthCheckPeriod);
+        if (period.isPresent() && !checks.isEmpty()) {
+            Duration staleness = extension.<Duration>getParameter(HealthCheckStaleness).get();
+            executor = Executors.newScheduledThreadPool(Math.min(checks.size(), Runtime.getRuntime().availableProcessors()), threadFactory());
+            for (Map.Entry<String, HealthCheck> check : checks.entrySet())
+                healthCheckRegistry.register(check.getKey(), ScheduledHealthCheck.schedule(check.getValue(), executor, period.get(), staleness));
+        } else {
+            checks.forEach(healthCheckRegistry::register);
+        }
+
         // Clear out collected health check producers
         healthChecks.clear();
     }
-}
\ No newline at end of file
+
+    private void shutdown(@Observes BeforeShutdown shutdown) {
+        if (executor != null)
+            executor.shutdownNow();
+    }
+
+    // Avoid nested classes as the bean discovery would load them along with this extension when the health checks are not available
+    private static ThreadFactory threadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "metrics-cdi-health-check-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
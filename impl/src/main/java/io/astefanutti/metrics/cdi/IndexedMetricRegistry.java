@@ -0,0 +1,239 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link MetricRegistry} that maintains a sorted view of its metrics per metric type.
+ * <p>
+ * The views are built on first read and reused until a metric is added to or removed
+ * from the registry, so that repeated reads, like reporter ticks, do not scan and sort
+ * the whole registry each time. The views also answer name prefix queries with
+ * {@link #getMetrics(Class, String)}.
+ * <p>
+ * This is the implementation of the default {@code MetricRegistry} bean declared by
+ * <i>Metrics CDI</i> when the application does not provide one.
+ *
+ * @since 1.7.0
+ */
+@Vetoed
+public class IndexedMetricRegistry extends MetricRegistry {
+
+    private final AtomicLong modifications = new AtomicLong();
+
+    private final ConcurrentMap<Class<?>, Index<?>> indexes = new ConcurrentHashMap<>();
+
+    public IndexedMetricRegistry() {
+        addListener(new MetricRegistryListener() {
+            @Override
+            public void onGaugeAdded(String name, Gauge<?> gauge) {
+                modifications.incrementAndGet();
+            }
+
+            @Override
+            public void onGaugeRemoved(String name) {
+                modifications.incrementAndGet();
+            }
+
+            @Override
+            public void onCounterAdded(String name, Counter counter) {
+                modifications.incrementAndGet();
+            }
+
+            @Override
+            public void onCounterRemoved(String name) {
+                modifications.incrementAndGet();
+            }
+
+            @Override
+            public void onHistogramAdded(String name, Histogram histogram) {
+                modifications.incrementAndGet();
+            }
+
+            @Override
+            public void onHistogramRemoved(String name) {
+                modifications.incrementAndGet();
+            }
+
+            @Override
+            public void onMeterAdded(String name, Meter meter) {
+                modifications.incrementAndGet();
+            }
+
+            @Override
+            public void onMeterRemoved(String name) {
+                modifications.incrementAndGet();
+            }
+
+            @Override
+            public void onTimerAdded(String name, Timer timer) {
+                modifications.incrementAndGet();
+            }
+
+            @Override
+            public void onTimerRemoved(String name) {
+                modifications.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Returns the metrics of the given type whose names start with the given prefix.
+     *
+     * @param type   the type of the metrics to return, {@code Metric.class} for all the metrics
+     * @param prefix the prefix of the names of the metrics to return
+     * @param <T>    the type of the metrics
+     * @return an unmodifiable sorted map of the matching metrics
+     */
+    public <T extends Metric> SortedMap<String, T> getMetrics(Class<T> type, String prefix) {
+        return Collections.unmodifiableSortedMap(view(type).subMap(prefix, true, prefix + Character.MAX_VALUE, false));
+    }
+
+    @Override
+    public SortedSet<String> getNames() {
+        return Collections.unmodifiableSortedSet(view(Metric.class).navigableKeySet());
+    }
+
+    @Override
+    public SortedMap<String, Gauge> getGauges() {
+        return Collections.unmodifiableSortedMap(view(Gauge.class));
+    }
+
+    @Override
+    public SortedMap<String, Gauge> getGauges(MetricFilter filter) {
+        return filter(view(Gauge.class), filter);
+    }
+
+    @Override
+    public SortedMap<String, Counter> getCounters() {
+        return Collections.unmodifiableSortedMap(view(Counter.class));
+    }
+
+    @Override
+    public SortedMap<String, Counter> getCounters(MetricFilter filter) {
+        return filter(view(Counter.class), filter);
+    }
+
+    @Override
+    public SortedMap<String, Histogram> getHistograms() {
+        return Collections.unmodifiableSortedMap(view(Histogram.class));
+    }
+
+    @Override
+    public SortedMap<String, Histogram> getHistograms(MetricFilter filter) {
+        return filter(view(Histogram.class), filter);
+    }
+
+    @Override
+    public SortedMap<String, Meter> getMeters() {
+        return Collections.unmodifiableSortedMap(view(Meter.class));
+    }
+
+    @Override
+    public SortedMap<String, Meter> getMeters(MetricFilter filter) {
+        return filter(view(Meter.class), filter);
+    }
+
+    @Override
+    public SortedMap<String, Timer> getTimers() {
+        return Collections.unmodifiableSortedMap(view(Timer.class));
+    }
+
+    @Override
+    public SortedMap<String, Timer> getTimers(MetricFilter filter) {
+        return filter(view(Timer.class), filter);
+    }
+
+    private <T extends Metric> SortedMap<String, T> filter(NavigableMap<String, T> metrics, MetricFilter filter) {
+        if (filter == MetricFilter.ALL)
+            return Collections.unmodifiableSortedMap(metrics);
+
+        TreeMap<String, T> filtered = new TreeMap<>();
+        for (Map.Entry<String, T> metric : metrics.entrySet()) {
+            if (filter.matches(metric.getKey(), metric.getValue()))
+                filtered.put(metric.getKey(), metric.getValue());
+        }
+        return Collections.unmodifiableSortedMap(filtered);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Metric> NavigableMap<String, T> view(Class<T> type) {
+        // The modification count must be read before the metrics so that a view missing a concurrently added metric is considered stale
+        long modification = modifications.get();
+        Index<T> index = (Index<T>) indexes.computeIfAbsent(type, Index::new);
+        return index.view(modification, getMetrics());
+    }
+
+    @Vetoed
+    static final class Index<T extends Metric> {
+
+        private final Class<T> type;
+
+        private volatile View<T> view;
+
+        Index(Class<?> type) {
+            @SuppressWarnings("unchecked")
+            Class<T> metric = (Class<T>) type;
+            this.type = metric;
+        }
+
+        NavigableMap<String, T> view(long modification, Map<String, Metric> metrics) {
+            View<T> view = this.view;
+            if (view == null || view.modification != modification) {
+                TreeMap<String, T> sorted = new TreeMap<>();
+                for (Map.Entry<String, Metric> metric : metrics.entrySet()) {
+                    if (type.isInstance(metric.getValue()))
+                        sorted.put(metric.getKey(), type.cast(metric.getValue()));
+                }
+                this.view = view = new View<>(modification, sorted);
+            }
+            return view.metrics;
+        }
+    }
+
+    @Vetoed
+    static final class View<T extends Metric> {
+
+        private final long modification;
+
+        private final NavigableMap<String, T> metrics;
+
+        View(long modification, NavigableMap<String, T> metrics) {
+            this.modification = modification;
+            this.metrics = metrics;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.annotation.Timed;
+
+import javax.enterprise.context.Dependent;
+import javax.enterprise.context.NormalScope;
+import javax.enterprise.inject.Vetoed;
+import javax.enterprise.inject.spi.AnnotatedMethod;
+import javax.enterprise.inject.spi.AnnotatedType;
+import javax.enterprise.util.AnnotationLiteral;
+import javax.inject.Scope;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// Selects the bean types and methods that get timed without being annotated, as configured with the deployment properties
+@Vetoed
+/* package-private */ final class InstrumentationRules {
+
+    static final Timed TIMED = new TimedLiteral();
+
+    private final List<Pattern> packages;
+
+    private final List<Pattern> types;
+
+    private final Set<String> scopes;
+
+    private final int visibility;
+
+    private final double sampling;
+
+    InstrumentationRules(MetricsProperties properties) {
+        packages = globs(properties.get("instrumentation.packages").orElse(""));
+        types = globs(properties.get("instrumentation.types").orElse(""));
+        scopes = new HashSet<>(values(properties.get("instrumentation.scopes").orElse("")));
+        visibility = visibility(properties.get("instrumentation.visibility").orElse("public"));
+        sampling = Double.parseDouble(properties.get("instrumentation.sampling").orElse("1"));
+        if (sampling <= 0 || sampling > 1)
+            throw new IllegalArgumentException("Instrumentation sampling [" + sampling + "] must be in the ]0, 1] range");
+    }
+
+    boolean isEmpty() {
+        return packages.isEmpty() && types.isEmpty();
+    }
+
+    double sampling() {
+        return sampling;
+    }
+
+    boolean matches(AnnotatedType<?> type) {
+        Class<?> clazz = type.getJavaClass();
+        if (isEmpty() || clazz.isInterface() || clazz.isAnnotation() || clazz.isEnum() || Modifier.isFinal(clazz.getModifiers()))
+            return false;
+        String name = clazz.getPackage() != null ? clazz.getPackage().getName() : "";
+        return (packages.isEmpty() || matches(packages, name))
+            && (types.isEmpty() || matches(types, clazz.getName()))
+            && (scopes.isEmpty() || matchesScope(type));
+    }
+
+    boolean matches(AnnotatedMethod<?> method) {
+        Method javaMethod = method.getJavaMember();
+        int modifiers = javaMethod.getModifiers();
+        return !Object.class.equals(javaMethod.getDeclaringClass())
+            && !javaMethod.isSynthetic()
+            && !Modifier.isStatic(modifiers)
+            && !Modifier.isFinal(modifiers)
+            && visibility(modifiers) >= visibility;
+    }
+
+    private boolean matchesScope(AnnotatedType<?> type) {
+        for (Annotation annotation : type.getAnnotations()) {
+            Class<? extends Annotation> scope = annotation.annotationType();
+            if (scope.isAnnotationPresent(NormalScope.class) || scope.isAnnotationPresent(Scope.class))
+                return scopes.contains(scope.getName()) || scopes.contains(scope.getSimpleName());
+        }
+        return scopes.contains(Dependent.class.getName()) || scopes.contains(Dependent.class.getSimpleName());
+    }
+
+    private static boolean matches(List<Pattern> patterns, String name) {
+        for (Pattern pattern : patterns)
+            if (pattern.matcher(name).matches())
+                return true;
+        return false;
+    }
+
+    private static int visibility(int modifiers) {
+        if (Modifier.isPublic(modifiers))
+            return 3;
+        else if (Modifier.isProtected(modifiers))
+            return 2;
+        else if (!Modifier.isPrivate(modifiers))
+            return 1;
+        else
+            return 0;
+    }
+
+    private static int visibility(String visibility) {
+        switch (visibility.trim().toLowerCase(Locale.ROOT)) {
+            case "public":
+                return 3;
+            case "protected":
+                return 2;
+            case "package":
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unsupported instrumentation visibility [" + visibility + "], supported visibilities are [public, protected, package]");
+        }
+    }
+
+    private static List<Pattern> globs(String globs) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String glob : values(globs))
+            patterns.add(MetricSwitches.glob(glob));
+        return patterns;
+    }
+
+    private static List<String> values(String values) {
+        if (values.trim().isEmpty())
+            return Collections.emptyList();
+        List<String> list = new ArrayList<>();
+        for (String value : values.split(","))
+            if (!value.trim().isEmpty())
+                list.add(value.trim());
+        return list;
+    }
+
+    @Vetoed
+    @SuppressWarnings("all")
+    static final class TimedLiteral extends AnnotationLiteral<Timed> implements Timed {
+
+        TimedLiteral() {
+        }
+
+        @Override
+        public String name() {
+            return "";
+        }
+
+        @Override
+        public boolean absolute() {
+            return false;
+        }
+    }
+}
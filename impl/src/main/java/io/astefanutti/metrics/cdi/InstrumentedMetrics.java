@@ -0,0 +1,324 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runtime support of the Metrics CDI agent, that instruments the bytecode of the methods annotated with
+ * {@link Counted}, {@link ExceptionMetered}, {@link Metered} or {@link Timed} when their class gets loaded.
+ * <p>
+ * The instrumented classes get a {@link Handle} per instrumented method, created once when they get initialized, and
+ * their instrumented methods call this class directly with it, instead of being intercepted by the Metrics CDI
+ * interceptors. The handles are bound to the metrics of the deployment whose class loader, or one of its parents,
+ * defines the instrumented class. This class is not meant to be used by applications.
+ *
+ * @since 1.7.0
+ */
+@Vetoed
+public final class InstrumentedMetrics {
+
+    // The metrics enabled on entering an instrumented method, in the lower bits of the returned state
+    private static final int COUNTED = 1;
+
+    private static final int EXCEPTION_METERED = 2;
+
+    private static final int TIMED = 4;
+
+    private static final int FLAGS = 3;
+
+    // Incremented when the deployments or their metrics change so that the handles resolve their bindings again
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    // Keyed by the class loaders of the deployments so that several deployments can share this class
+    private static final Map<ClassLoader, Deployment> deployments = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private InstrumentedMetrics() {
+    }
+
+    /**
+     * Marks the methods instrumented by the Metrics CDI agent, whose metrics annotations do not get bound to the
+     * Metrics CDI interceptors.
+     */
+    @Documented
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.METHOD})
+    public @interface Instrumented {
+    }
+
+    /**
+     * Called by the static initializer of an instrumented class.
+     *
+     * @param type the instrumented class
+     * @param method the name of the instrumented method
+     * @param descriptor the descriptor of the instrumented method
+     * @return the handle passed to the other methods by the instrumented method
+     */
+    public static Handle handle(Class<?> type, String method, String descriptor) {
+        return new Handle(type, method, descriptor);
+    }
+
+    /**
+     * Called on entering an instrumented method.
+     *
+     * @param handle the handle of the instrumented method
+     * @return the state to be passed to {@link #start(int)}, {@link #exit(Handle, int, long)} and
+     * {@link #error(Throwable, Handle, int, long)}
+     */
+    public static int enter(Handle handle) {
+        Bound bound = handle.bound();
+        // The bindings are only checked once per invocation, so that sampled and switched metrics are consistently measured
+        int state = 0;
+        if (bound.counted != null && bound.counted.isEnabled()) {
+            bound.counted.metric().inc();
+            state |= COUNTED;
+        }
+        if (bound.metered != null && bound.metered.isEnabled())
+            bound.metered.metric().mark();
+        if (bound.exceptionMetered != null && bound.exceptionMetered.isEnabled())
+            state |= EXCEPTION_METERED;
+        if (bound.timed != null && bound.timed.isEnabled())
+            state |= TIMED;
+        return state != 0 ? state | bound.generation << FLAGS : 0;
+    }
+
+    /**
+     * Called after {@link #enter(Handle)}.
+     *
+     * @param state the state returned by {@link #enter(Handle)}
+     * @return the start time to be passed to {@link #exit(Handle, int, long)} and {@link #error(Throwable, Handle, int, long)}
+     */
+    public static long start(int state) {
+        return (state & TIMED) != 0 ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Called on returning from an instrumented method.
+     *
+     * @param handle the handle of the instrumented method
+     * @param state the state returned by {@link #enter(Handle)}
+     * @param start the start time returned by {@link #start(int)}
+     */
+    public static void exit(Handle handle, int state, long start) {
+        Bound bound = handle.bound(state);
+        if (bound == null)
+            return;
+        if ((state & TIMED) != 0)
+            bound.timed.metric().update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if ((state & COUNTED) != 0 && !bound.counted.annotation().monotonic())
+            bound.counted.metric().dec();
+    }
+
+    /**
+     * Called when an instrumented method throws.
+     *
+     * @param throwable the thrown throwable
+     * @param handle the handle of the instrumented method
+     * @param state the state returned by {@link #enter(Handle)}
+     * @param start the start time returned by {@link #start(int)}
+     */
+    public static void error(Throwable throwable, Handle handle, int state, long start) {
+        Bound bound = handle.bound(state);
+        if (bound == null)
+            return;
+        if ((state & EXCEPTION_METERED) != 0 && bound.exceptionMetered.annotation().cause().isInstance(throwable))
+            bound.exceptionMetered.metric().mark();
+        exit(handle, state, start);
+    }
+
+    static boolean isInstrumented(Method method) {
+        return method.isAnnotationPresent(Instrumented.class);
+    }
+
+    static void bind(ClassLoader loader, InterceptionPlans plans, MetricResolver resolver) {
+        deployments.put(loader, new Deployment(plans, resolver));
+        invalidate();
+    }
+
+    static void unbind(InterceptionPlans plans) {
+        synchronized (deployments) {
+            deployments.values().removeIf(deployment -> deployment.plans == plans);
+        }
+        invalidate();
+    }
+
+    // Has the handles resolve their bindings again, e.g. when the bound metrics get removed from the registry
+    static void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    private static Deployment deployment(ClassLoader loader) {
+        for (ClassLoader parent = loader; parent != null; parent = parent.getParent()) {
+            Deployment deployment = deployments.get(parent);
+            if (deployment != null)
+                return deployment;
+        }
+        return null;
+    }
+
+    static String descriptor(Method method) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Class<?> parameter : method.getParameterTypes())
+            descriptor(parameter, descriptor);
+        descriptor.append(')');
+        descriptor(method.getReturnType(), descriptor);
+        return descriptor.toString();
+    }
+
+    private static void descriptor(Class<?> type, StringBuilder descriptor) {
+        if (type.isArray()) {
+            descriptor.append('[');
+            descriptor(type.getComponentType(), descriptor);
+        } else if (!type.isPrimitive()) {
+            descriptor.append('L').append(type.getName().replace('.', '/')).append(';');
+        } else if (type == void.class) {
+            descriptor.append('V');
+        } else if (type == boolean.class) {
+            descriptor.append('Z');
+        } else if (type == byte.class) {
+            descriptor.append('B');
+        } else if (type == char.class) {
+            descriptor.append('C');
+        } else if (type == short.class) {
+            descriptor.append('S');
+        } else if (type == int.class) {
+            descriptor.append('I');
+        } else if (type == long.class) {
+            descriptor.append('J');
+        } else if (type == float.class) {
+            descriptor.append('F');
+        } else {
+            descriptor.append('D');
+        }
+    }
+
+    @Vetoed
+    private static final class Deployment {
+
+        private final InterceptionPlans plans;
+
+        private final MetricResolver resolver;
+
+        Deployment(InterceptionPlans plans, MetricResolver resolver) {
+            this.plans = plans;
+            this.resolver = resolver;
+        }
+    }
+
+    /**
+     * The metrics of an instrumented method, held by a static field of its class.
+     */
+    @Vetoed
+    public static final class Handle {
+
+        private final Class<?> type;
+
+        private final String method;
+
+        private final String descriptor;
+
+        private volatile Bound bound;
+
+        private Handle(Class<?> type, String method, String descriptor) {
+            this.type = type;
+            this.method = method;
+            this.descriptor = descriptor;
+        }
+
+        private Bound bound() {
+            Bound bound = this.bound;
+            int generation = InstrumentedMetrics.generation.get();
+            return bound != null && bound.generation == generation ? bound : resolve(generation);
+        }
+
+        // Returns the bindings the state has been computed from, null when they have been resolved again since
+        private Bound bound(int state) {
+            Bound bound = this.bound;
+            return state != 0 && bound != null && (bound.generation << FLAGS) == (state & -1 << FLAGS) ? bound : null;
+        }
+
+        private synchronized Bound resolve(int generation) {
+            Bound bound = this.bound;
+            if (bound != null && bound.generation == generation)
+                return bound;
+
+            bound = new Bound(generation);
+            Deployment deployment = deployment(type.getClassLoader());
+            if (deployment != null) {
+                for (Method candidate : type.getDeclaredMethods()) {
+                    if (candidate.getName().equals(method) && descriptor(candidate).equals(descriptor)) {
+                        bound = new Bound(generation, deployment.plans.of(type), candidate, deployment.resolver);
+                        break;
+                    }
+                }
+            }
+            this.bound = bound;
+            return bound;
+        }
+    }
+
+    // The bindings of an instrumented method, resolved once per generation rather than looked up on every invocation
+    @Vetoed
+    private static final class Bound {
+
+        private final int generation;
+
+        private final InterceptionPlan.Binding<Counter, Counted> counted;
+
+        private final InterceptionPlan.Binding<Meter, ExceptionMetered> exceptionMetered;
+
+        private final InterceptionPlan.Binding<Meter, Metered> metered;
+
+        private final InterceptionPlan.Binding<Timer, Timed> timed;
+
+        Bound(int generation) {
+            this.generation = generation;
+            this.counted = null;
+            this.exceptionMetered = null;
+            this.metered = null;
+            this.timed = null;
+        }
+
+        Bound(int generation, InterceptionPlan plan, Method method, MetricResolver resolver) {
+            plan.register(method);
+            this.generation = generation;
+            // Only the method annotations get woven, the metrics annotations of the bean class remain bound to the interceptors
+            this.counted = method.isAnnotationPresent(Counted.class) && resolver.counted(method.getDeclaringClass(), method).isPresent() ? plan.counted(method) : null;
+            this.exceptionMetered = method.isAnnotationPresent(ExceptionMetered.class) && resolver.exceptionMetered(method.getDeclaringClass(), method).isPresent() ? plan.exceptionMetered(method) : null;
+            this.metered = method.isAnnotationPresent(Metered.class) && resolver.metered(method.getDeclaringClass(), method).isPresent() ? plan.metered(method) : null;
+            this.timed = method.isAnnotationPresent(Timed.class) && resolver.timed(method.getDeclaringClass(), method).isPresent() ? plan.timed(method) : null;
+        }
+    }
+}
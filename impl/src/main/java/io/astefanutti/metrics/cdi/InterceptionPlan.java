@@ -0,0 +1,277 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.annotation.Counted;
+import com.codahale.metrics.annotation.ExceptionMetered;
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import static io.astefanutti.metrics.cdi.MetricsParameter.ReservoirFunction;
+
+// Resolves the metrics of the intercepted executables of a bean class once and shares them across all the bean instances and their interceptors
+@Vetoed
+/* package-private */ final class InterceptionPlan {
+
+    private final Class<?> bean;
+
+    private final MetricRegistry registry;
+
+    private final MetricResolver resolver;
+
+    private final MetricsExtension extension;
+
+    private final ConcurrentMap<Executable, Binding<Counter, Counted>> counted = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Executable, Binding<Meter, ExceptionMetered>> exceptionMetered = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Executable, Binding<Meter, Metered>> metered = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Executable, Binding<Timer, Timed>> timed = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Executable, Binding<Meter, WeightedMetered>> weightedMetered = new ConcurrentHashMap<>();
+
+    private final Set<Executable> unweighted = ConcurrentHashMap.newKeySet();
+
+    InterceptionPlan(Class<?> bean, MetricRegistry registry, MetricResolver resolver, MetricsExtension extension) {
+        this.bean = bean;
+        this.registry = registry;
+        this.resolver = resolver;
+        this.extension = extension;
+    }
+
+    // Registers the metrics of the bean constructor and of the methods over the bean type hierarchy and resolves their bindings
+    void register(Constructor<?> constructor) {
+        register((Executable) constructor);
+
+        Class<?> type = bean;
+        do {
+            // TODO: discover annotations declared on implemented interfaces
+            for (Method method : type.getDeclaredMethods())
+                if (!method.isSynthetic() && !Modifier.isPrivate(method.getModifiers()))
+                    register(method);
+            type = type.getSuperclass();
+        } while (!Object.class.equals(type));
+    }
+
+    void register(Executable executable) {
+        MetricResolver.Of<Counted> counted = resolver.counted(bean, executable);
+        if (counted.isPresent()) {
+            extension.counter(registry, counted.metricName());
+            counted(executable);
+        }
+
+        MetricResolver.Of<ExceptionMetered> exceptionMetered = resolver.exceptionMetered(bean, executable);
+        if (exceptionMetered.isPresent()) {
+            extension.meter(registry, exceptionMetered.metricName());
+            exceptionMetered(executable);
+        }
+
+        MetricResolver.Of<Metered> metered = resolver.metered(bean, executable);
+        if (metered.isPresent()) {
+            extension.meter(registry, metered.metricName());
+            metered(executable);
+        }
+
+        MetricResolver.Of<Timed> timed = resolver.timed(bean, executable);
+        if (timed.isPresent()) {
+            extension.<BiFunction<String, Class<? extends Metric>, Optional<Reservoir>>>getParameter(ReservoirFunction)
+                .flatMap(function -> function.apply(timed.metricName(), Timer.class))
+                .map(reservoir -> registry.timer(timed.metricName(), () -> new Timer(reservoir)))
+                .orElseGet(() -> registry.timer(timed.metricName()));
+            timed(executable);
+        }
+
+        MetricResolver.Of<WeightedMetered> weightedMetered = resolver.weightedMetered(bean, executable);
+        if (weightedMetered.isPresent()) {
+            extension.meter(registry, weightedMetered.metricName());
+            // Resolves the weight accessor, and registers the sizes histogram, ahead of the first invocation
+            weightedMetered(executable);
+        }
+    }
+
+    Binding<Counter, Counted> counted(Executable executable) {
+        return counted.computeIfAbsent(executable, key -> binding(resolver.counted(bean, key), Counter.class, "counter", 1, null));
+    }
+
+    Binding<Meter, ExceptionMetered> exceptionMetered(Executable executable) {
+        return exceptionMetered.computeIfAbsent(executable, key -> binding(resolver.exceptionMetered(bean, key), Meter.class, "meter", 1, null));
+    }
+
+    Binding<Meter, Metered> metered(Executable executable) {
+        return metered.computeIfAbsent(executable, key -> binding(resolver.metered(bean, key), Meter.class, "meter", 1, name -> meteredResult(key, name)));
+    }
+
+    Binding<Timer, Timed> timed(Executable executable) {
+        return timed.computeIfAbsent(executable, key -> binding(resolver.timed(bean, key), Timer.class, "timer", extension.isInstrumented(key) ? extension.instrumentation().sampling() : 1, name -> timedResult(key, name)).deferring(PublisherMetrics.isPublisher(key)));
+    }
+
+    // Returns null for the methods intercepted through the bean class binding that do not carry any weight
+    Binding<Meter, WeightedMetered> weightedMetered(Executable executable) {
+        Binding<Meter, WeightedMetered> binding = weightedMetered.get(executable);
+        if (binding != null || unweighted.contains(executable))
+            return binding;
+
+        return weightedMetered.computeIfAbsent(executable, key -> {
+            MetricResolver.Of<WeightedMetered> of = resolver.weightedMetered(bean, key);
+            if (!of.isPresent()) {
+                unweighted.add(key);
+                return null;
+            }
+            return binding(of, Meter.class, "meter", 1, null).weighing(Weight.of((Method) key, of.metricAnnotation(), registry, of.metricName()));
+        });
+    }
+
+    // The publishers returned get their subscriptions measured rather than their assembly, and the streams their consumption as well
+    private UnaryOperator<Object> timedResult(Executable executable, String name) {
+        if (PublisherMetrics.isPublisher(executable))
+            return PublisherMetrics.timed(registry, name)::decorate;
+        if (StreamMetrics.isStream(executable))
+            return StreamMetrics.timed(registry, name, executable)::decorate;
+        return null;
+    }
+
+    private UnaryOperator<Object> meteredResult(Executable executable, String name) {
+        if (PublisherMetrics.isPublisher(executable))
+            return PublisherMetrics.metered(registry, name)::decorate;
+        if (StreamMetrics.isStream(executable)) {
+            StreamMetrics metrics = StreamMetrics.metered(registry, name, executable);
+            return metrics != null ? metrics::decorate : null;
+        }
+        return null;
+    }
+
+    // Evicts the bindings of the given metric and of the metrics derived from it, e.g. the consumption timers of the returned streams
+    void evict(String name) {
+        Predicate<Binding<?, ?>> evicted = binding -> binding.name.equals(name) || name.startsWith(binding.name + ".");
+        counted.values().removeIf(evicted);
+        exceptionMetered.values().removeIf(evicted);
+        metered.values().removeIf(evicted);
+        timed.values().removeIf(evicted);
+        weightedMetered.values().removeIf(evicted);
+    }
+
+    void switching() {
+        MetricSwitches switches = extension.switches();
+        counted.values().forEach(binding -> binding.enabled = switches.isEnabled(binding.name));
+        exceptionMetered.values().forEach(binding -> binding.enabled = switches.isEnabled(binding.name));
+        metered.values().forEach(binding -> binding.enabled = switches.isEnabled(binding.name));
+        timed.values().forEach(binding -> binding.enabled = switches.isEnabled(binding.name));
+        weightedMetered.values().forEach(binding -> binding.enabled = switches.isEnabled(binding.name));
+    }
+
+    private <M extends Metric, A extends Annotation> Binding<M, A> binding(MetricResolver.Of<A> of, Class<M> type, String kind, double sampling, Function<String, UnaryOperator<Object>> result) {
+        Metric metric = registry.getMetrics().get(of.metricName());
+        if (metric == null)
+            throw new IllegalStateException("No " + kind + " with name [" + of.metricName() + "] found in registry [" + registry + "]");
+
+        return new Binding<>(of.metricName(), type.cast(metric), of.metricAnnotation(), extension.switches().isEnabled(of.metricName()), sampling, result != null ? result.apply(of.metricName()) : null);
+    }
+
+    @Vetoed
+    static final class Binding<M extends Metric, A extends Annotation> {
+
+        private final String name;
+
+        private final M metric;
+
+        private final A annotation;
+
+        // Read on every intercepted invocation and only written when the metric switches change
+        private volatile boolean enabled;
+
+        private final double sampling;
+
+        // Decorates the returned value so that its consumption gets measured, null when the returned value is not decorated
+        private final UnaryOperator<Object> result;
+
+        // Only set for the weighted metered methods, before the binding gets published
+        private Weight weight;
+
+        // Only set for the timed methods whose returned value gets timed instead of their invocation, before the binding gets published
+        private boolean deferred;
+
+        Binding(String name, M metric, A annotation, boolean enabled, double sampling, UnaryOperator<Object> result) {
+            this.name = name;
+            this.metric = metric;
+            this.annotation = annotation;
+            this.enabled = enabled;
+            this.sampling = sampling;
+            this.result = result;
+        }
+
+        // Sampled bindings are only enabled for a random fraction of the invocations, so that the counts of their metrics are sampled as well
+        boolean isEnabled() {
+            return enabled && (sampling >= 1 || ThreadLocalRandom.current().nextDouble() < sampling);
+        }
+
+        M metric() {
+            return metric;
+        }
+
+        A annotation() {
+            return annotation;
+        }
+
+        Binding<M, A> weighing(Weight weight) {
+            this.weight = weight;
+            return this;
+        }
+
+        Weight weight() {
+            return weight;
+        }
+
+        Binding<M, A> deferring(boolean deferred) {
+            this.deferred = deferred;
+            return this;
+        }
+
+        boolean defersResult() {
+            return deferred;
+        }
+
+        boolean decoratesResult() {
+            return result != null;
+        }
+
+        Object decorate(Object returned) {
+            return returned != null ? result.apply(returned) : null;
+        }
+    }
+}
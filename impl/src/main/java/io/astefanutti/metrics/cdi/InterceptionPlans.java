@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@ApplicationScoped
+/* package-private */ class InterceptionPlans {
+
+    private final ConcurrentMap<Class<?>, InterceptionPlan> plans = new ConcurrentHashMap<>();
+
+    @Inject
+    private MetricRegistry registry;
+
+    @Inject
+    private MetricResolver resolver;
+
+    @Inject
+    private MetricsExtension extension;
+
+    // Evicts the metrics removed from the registry, and those they are derived from, so that the interceptors resolve them again
+    private final MetricRegistryListener eviction = new MetricRegistryListener.Base() {
+        @Override
+        public void onCounterRemoved(String name) {
+            evict(name);
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            evict(name);
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            evict(name);
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            evict(name);
+        }
+    };
+
+    // Enables or disables the resolved bindings when the metric switches change
+    private final Runnable switching = () -> plans.values().forEach(InterceptionPlan::switching);
+
+    @PostConstruct
+    private void addListener() {
+        registry.addListener(eviction);
+        extension.switches().addListener(switching);
+    }
+
+    @PreDestroy
+    private void removeListener() {
+        registry.removeListener(eviction);
+        extension.switches().removeListener(switching);
+    }
+
+    private void evict(String name) {
+        plans.values().forEach(plan -> plan.evict(name));
+        // The methods instrumented by the agent hold their bindings as well
+        InstrumentedMetrics.invalidate();
+    }
+
+    InterceptionPlan of(Class<?> bean) {
+        return plans.computeIfAbsent(bean, type -> new InterceptionPlan(type, registry, resolver, extension));
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.health.HealthCheck;
+
+import javax.enterprise.inject.Vetoed;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+import java.lang.reflect.Type;
+
+import static io.astefanutti.metrics.cdi.CdiHelper.getReference;
+
+@Vetoed
+/* package-private */ final class LazyHealthCheck extends HealthCheck {
+
+    private final BeanManager manager;
+
+    private final Bean<?> bean;
+
+    private final Type type;
+
+    private volatile HealthCheck healthCheck;
+
+    private LazyHealthCheck(BeanManager manager, Bean<?> bean, Type type) {
+        this.manager = manager;
+        this.bean = bean;
+        this.type = type;
+    }
+
+    static HealthCheck of(BeanManager manager, Bean<?> bean, Type type) {
+        return new LazyHealthCheck(manager, bean, type);
+    }
+
+    @Override
+    protected Result check() {
+        return healthCheck().execute();
+    }
+
+    private HealthCheck healthCheck() {
+        HealthCheck healthCheck = this.healthCheck;
+        if (healthCheck == null) {
+            synchronized (this) {
+                healthCheck = this.healthCheck;
+                if (healthCheck == null)
+                    this.healthCheck = healthCheck = getReference(manager, type, bean);
+            }
+        }
+        return healthCheck;
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+
+import javax.enterprise.inject.Vetoed;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Stores the counts of counters and meters in a memory-mapped file, so that they outlive the JVM and can be read by external tools
+@Vetoed
+/* package-private */ final class MappedMetrics {
+
+    static final int MAGIC = 0x4d434443;
+
+    static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 64;
+
+    static final int SLOT_SIZE = 128;
+
+    static final int NAME_SIZE = 112;
+
+    // The size of the truncated name of a metric whose name does not fit in a slot, followed by the hash of its full name
+    static final int PREFIX_SIZE = NAME_SIZE - 8;
+
+    static final int CAPACITY = 4096;
+
+    static final int COUNTER = 1;
+
+    static final int METER = 2;
+
+    // The offset of the count within a slot, aligned on 8 bytes for atomic access
+    private static final int COUNT = 120;
+
+    // Atomic access to the mapped memory requires byte buffer view var handles, that are not available on Java 8
+    private static final MethodHandle GET_AND_ADD = getAndAdd();
+
+    private final MappedByteBuffer buffer;
+
+    private final List<Pattern> patterns;
+
+    // The slot offsets by metric name, or by hash of the full name for the names that do not fit in a slot, restored from the file on start
+    private final Map<Object, Integer> slots = new HashMap<>();
+
+    private int used;
+
+    MappedMetrics(Path file, List<String> patterns) throws IOException {
+        this.patterns = patterns.stream().map(MetricSwitches::glob).collect(Collectors.toList());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping remains valid once the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) CAPACITY * SLOT_SIZE);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getInt(12) == SLOT_SIZE) {
+            used = Math.min(buffer.getInt(16), CAPACITY);
+            for (int slot = 0; slot < used; slot++) {
+                int offset = offset(slot);
+                int length = buffer.getInt(offset + 4);
+                if (length > NAME_SIZE) {
+                    slots.put(buffer.getLong(offset + 8 + PREFIX_SIZE), offset);
+                } else {
+                    byte[] name = new byte[Math.max(length, 0)];
+                    for (int i = 0; i < name.length; i++)
+                        name[i] = buffer.get(offset + 8 + i);
+                    slots.put(new String(name, StandardCharsets.UTF_8), offset);
+                }
+            }
+        } else {
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, CAPACITY).putInt(12, SLOT_SIZE).putInt(16, 0);
+        }
+    }
+
+    boolean matches(String name) {
+        if (patterns.isEmpty())
+            return true;
+        for (Pattern pattern : patterns)
+            if (pattern.matcher(name).matches())
+                return true;
+        return false;
+    }
+
+    // Returns a counter whose count is restored from the file, or null if the file is full
+    Counter counter(String name) {
+        int offset = slot(name, COUNTER);
+        return offset < 0 ? null : new MappedCounter(offset);
+    }
+
+    // Only the count of the meter is stored in the file, its rates start over on restart
+    Meter meter(String name) {
+        int offset = slot(name, METER);
+        return offset < 0 ? null : new MappedMeter(offset);
+    }
+
+    // Flushes the mapped file to the storage device, which the page cache does by itself when only the JVM crashes
+    void force() {
+        buffer.force();
+    }
+
+    private synchronized int slot(String name, int type) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        Object key = bytes.length > NAME_SIZE ? hash(bytes) : name;
+        Integer offset = slots.get(key);
+        if (offset != null) {
+            // The count of a metric whose type changed since the last run is not restored
+            if (buffer.getInt(offset) != type)
+                buffer.putLong(offset + COUNT, 0L).putInt(offset, type);
+            return offset;
+        }
+        if (used == CAPACITY)
+            return -1;
+
+        offset = offset(used);
+        buffer.putInt(offset, type).putInt(offset + 4, bytes.length);
+        if (bytes.length > NAME_SIZE) {
+            // The name is truncated on a character boundary so that it remains valid UTF-8
+            int length = PREFIX_SIZE;
+            while (length > 0 && (bytes[length] & 0xC0) == 0x80)
+                length--;
+            for (int i = 0; i < PREFIX_SIZE; i++)
+                buffer.put(offset + 8 + i, i < length ? bytes[i] : 0);
+            buffer.putLong(offset + 8 + PREFIX_SIZE, (Long) key);
+        } else {
+            for (int i = 0; i < NAME_SIZE; i++)
+                buffer.put(offset + 8 + i, i < bytes.length ? bytes[i] : 0);
+        }
+        buffer.putLong(offset + COUNT, 0L);
+        // The slot only gets accounted for once written entirely
+        buffer.putInt(16, ++used);
+        slots.put(key, offset);
+        return offset;
+    }
+
+    private void add(int offset, long n) {
+        if (GET_AND_ADD != null) {
+            try {
+                GET_AND_ADD.invokeExact((ByteBuffer) buffer, offset + COUNT, n);
+            } catch (Throwable cause) {
+                throw new IllegalStateException(cause);
+            }
+        } else {
+            synchronized (this) {
+                buffer.putLong(offset + COUNT, buffer.getLong(offset + COUNT) + n);
+            }
+        }
+    }
+
+    private long get(int offset) {
+        return buffer.getLong(offset + COUNT);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    // The 64-bit FNV-1a hash, that external tools can compute as well
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static MethodHandle getAndAdd() {
+        try {
+            Class<?> handle = Class.forName("java.lang.invoke.VarHandle");
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Object mode = Enum.valueOf((Class) Class.forName("java.lang.invoke.VarHandle$AccessMode"), "GET_AND_ADD");
+            Object view = MethodHandles.class.getMethod("byteBufferViewVarHandle", Class.class, ByteOrder.class).invoke(null, long[].class, ByteOrder.LITTLE_ENDIAN);
+            // The previous count is dropped so that the exact invocation does not have to consume it
+            return ((MethodHandle) handle.getMethod("toMethodHandle", mode.getClass()).invoke(view, mode))
+                .asType(MethodType.methodType(void.class, ByteBuffer.class, int.class, long.class));
+        } catch (ReflectiveOperationException cause) {
+            return null;
+        }
+    }
+
+    @Vetoed
+    private final class MappedCounter extends Counter {
+
+        private final int offset;
+
+        MappedCounter(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void inc() {
+            add(offset, 1L);
+        }
+
+        @Override
+        public void inc(long n) {
+            add(offset, n);
+        }
+
+        @Override
+        public void dec() {
+            add(offset, -1L);
+        }
+
+        @Override
+        public void dec(long n) {
+            add(offset, -n);
+        }
+
+        @Override
+        public long getCount() {
+            return get(offset);
+        }
+    }
+
+    @Vetoed
+    private final class MappedMeter extends Meter {
+
+        private final int offset;
+
+        MappedMeter(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void mark(long n) {
+            super.mark(n);
+            add(offset, n);
+        }
+
+        @Override
+        public long getCount() {
+            return get(offset);
+        }
+    }
+}
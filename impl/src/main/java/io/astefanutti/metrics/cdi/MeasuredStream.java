@@ -0,0 +1,58 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Measures the consumption of the streams returned by a {@link com.codahale.metrics.annotation.Timed} or
+ * {@link com.codahale.metrics.annotation.Metered} method, in addition to its invocations.
+ * <p>
+ * The method must return a {@code BaseStream}, a {@code Stream}, an {@code IntStream}, a {@code LongStream} or a
+ * {@code DoubleStream}. The timer and the meter of the method keep measuring its invocations, and the consumption
+ * of the returned streams is recorded when they get closed, e.g. with a try-with-resources statement, so that the
+ * streams that are never closed only get their invocation measured.
+ * <p>
+ * Given a method annotated like this:
+ * <pre><code>
+ *     {@literal @}Timed(name = "records")
+ *     {@literal @}MeasuredStream(elements = true)
+ *     public Stream&lt;Record&gt; records() {
+ *         ...
+ *     }
+ * </code></pre>
+ * The {@code records} timer will time the invocations of the {@code #records()} method, the {@code records.consumption}
+ * timer the time elapsed until the returned streams get closed, and the {@code records.elements} histogram the number
+ * of elements consumed from each of them.
+ *
+ * @since 1.7.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface MeasuredStream {
+
+    /**
+     * @return if {@code true}, count the elements consumed from the returned streams, into the {@code <name>.elements}
+     * histogram of the timer and the {@code <name>.items} meter of the meter. Counting the elements has a cost per element
+     * and has the sized streams traversed by the operations that would otherwise skip their elements, e.g. {@code count()}
+     */
+    boolean elements() default false;
+}
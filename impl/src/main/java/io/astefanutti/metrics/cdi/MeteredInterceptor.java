@@ -16,7 +16,6 @@
 package io.astefanutti.metrics.cdi;
 
 import com.codahale.metrics.Meter;
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.annotation.Metered;
 
 import javax.annotation.Priority;
@@ -35,17 +34,11 @@ import javax.interceptor.AroundTimeout;
 @Priority(Interceptor.Priority.LIBRARY_BEFORE + 10)
 /* packaged-private */ class MeteredInterceptor {
 
-    private final Bean<?> bean;
-
-    private final MetricRegistry registry;
-
-    private final MetricResolver resolver;
+    private final InterceptionPlan plan;
 
     @Inject
-    private MeteredInterceptor(@Intercepted Bean<?> bean, MetricRegistry registry, MetricResolver resolver) {
-        this.bean = bean;
-        this.registry = registry;
-        this.resolver = resolver;
+    private MeteredInterceptor(@Intercepted Bean<?> bean, InterceptionPlans plans) {
+        this.plan = plans.of(bean.getBeanClass());
     }
 
     @AroundConstruct
@@ -64,12 +57,12 @@ import javax.interceptor.AroundTimeout;
     }
 
     private Object meteredCallable(InvocationContext context, Executable executable) throws Exception {
-        String name = resolver.metered(bean.getBeanClass(), executable).metricName();
-        Meter meter = (Meter) registry.getMetrics().get(name);
-        if (meter == null)
-            throw new IllegalStateException("No meter with name [" + name + "] found in registry [" + registry + "]");
+        InterceptionPlan.Binding<Meter, Metered> metered = plan.metered(executable);
+        if (!metered.isEnabled())
+            return context.proceed();
 
-        meter.mark();
-        return context.proceed();
+        metered.metric().mark();
+        // The returned publisher or stream items get metered as well
+        return metered.decoratesResult() ? metered.decorate(context.proceed()) : context.proceed();
     }
 }
@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets the level of the metrics declared on the annotated bean class, constructor or method, similarly to log levels.
+ * <p>
+ * The metrics whose level is lower than the deployment threshold are ignored at deployment time, so that they do not
+ * cost any interception. The threshold is {@link #INFO} by default and can be set with the
+ * {@code io.astefanutti.metrics.cdi.level} system property or the {@code level} property of the
+ * {@code META-INF/metrics-cdi.properties} resources. The metrics declared on constructors and methods default to the level
+ * of their declaring class, and the metrics without level are {@link #INFO} metrics.
+ * <p>
+ * Levels are strings, so that they are written the same way as the threshold property, and are compared with the
+ * threshold regardless of their case.
+ *
+ * @since 1.7.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.CONSTRUCTOR, ElementType.METHOD})
+public @interface MetricLevel {
+
+    String TRACE = "TRACE";
+
+    String DEBUG = "DEBUG";
+
+    String INFO = "INFO";
+
+    /**
+     * @return the level of the metrics, one of {@link #TRACE}, {@link #DEBUG} or {@link #INFO}
+     */
+    String value();
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.reflect.Executable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+@Vetoed
+/* package-private */ final class MetricLevels {
+
+    // Ordered from the lowest to the highest level
+    private static final List<String> LEVELS = Arrays.asList(MetricLevel.TRACE, MetricLevel.DEBUG, MetricLevel.INFO);
+
+    private final int threshold;
+
+    MetricLevels(String threshold) {
+        this.threshold = ordinal(threshold);
+    }
+
+    boolean isEnabled(Class<?> type) {
+        return isEnabled(type.getAnnotation(MetricLevel.class));
+    }
+
+    boolean isEnabled(Executable executable) {
+        // Constructors and methods default to the level of their declaring class
+        MetricLevel level = executable.getAnnotation(MetricLevel.class);
+        return isEnabled(level != null ? level : executable.getDeclaringClass().getAnnotation(MetricLevel.class));
+    }
+
+    private boolean isEnabled(MetricLevel level) {
+        return (level != null ? ordinal(level.value()) : ordinal(MetricLevel.INFO)) >= threshold;
+    }
+
+    private static int ordinal(String level) {
+        int ordinal = LEVELS.indexOf(level.toUpperCase(Locale.ROOT));
+        if (ordinal < 0)
+            throw new IllegalArgumentException("Unsupported metric level [" + level + "], supported levels are " + LEVELS);
+        return ordinal;
+    }
+}
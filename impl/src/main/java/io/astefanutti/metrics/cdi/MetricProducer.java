@@ -40,8 +40,8 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.ReservoirFunction;
 /* package-private */ final class MetricProducer {
 
     @Produces
-    private static Counter counter(InjectionPoint ip, MetricRegistry registry, MetricName metricName) {
-        return registry.counter(metricName.of(ip));
+    private static Counter counter(InjectionPoint ip, MetricRegistry registry, MetricName metricName, MetricsExtension extension) {
+        return extension.counter(registry, metricName.of(ip));
     }
 
     @Produces
@@ -65,8 +65,8 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.ReservoirFunction;
     }
 
     @Produces
-    private static Meter meter(InjectionPoint ip, MetricRegistry registry, MetricName metricName) {
-        return registry.meter(metricName.of(ip));
+    private static Meter meter(InjectionPoint ip, MetricRegistry registry, MetricName metricName, MetricsExtension extension) {
+        return extension.meter(registry, metricName.of(ip));
     }
 
     @Produces
@@ -31,6 +31,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.util.Optional;
 
 import static io.astefanutti.metrics.cdi.MetricsParameter.UseAbsoluteName;;;
 
@@ -67,21 +68,39 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.UseAbsoluteName;;;
         return resolverOf(bean, executable, Timed.class);
     }
 
+    // Constructors do not carry any weight, nor do the void methods of the bean classes weighted by the returned values
+    Of<WeightedMetered> weightedMetered(Class<?> bean, Executable executable) {
+        if (!(executable instanceof Method))
+            return new DoesNotHaveMetric<>();
+
+        Of<WeightedMetered> of = resolverOf(bean, executable, WeightedMetered.class);
+        if (of.isPresent() && !executable.isAnnotationPresent(WeightedMetered.class) && of.metricAnnotation().weight() == WeightedMetered.RETURN_VALUE && ((Method) executable).getReturnType() == void.class)
+            return new DoesNotHaveMetric<>();
+        return of;
+    }
+
     private <T extends Annotation> Of<T> resolverOf(Class<?> bean, Executable executable, Class<T> metric) {
-        if (executable.isAnnotationPresent(metric))
+        if (!extension.levels().isEnabled(executable))
+            return new DoesNotHaveMetric<>();
+        else if (executable.isAnnotationPresent(metric))
             return elementResolverOf(executable, metric);
+        else if (Timed.class.equals(metric) && extension.isInstrumented(executable))
+            return new DoesHaveMetric<>(metric.cast(InstrumentationRules.TIMED), metricName(executable, metric, "", false));
         else
             return beanResolverOf(executable, metric, bean);
     }
 
     private <T extends Annotation> Of<T> elementResolverOf(Executable executable, Class<T> metric) {
         T annotation = executable.getAnnotation(metric);
-        String name = metricName(executable, metric, metricName(annotation), isMetricAbsolute(annotation));
+        String name = generatedMetricName(executable, metric)
+            .orElseGet(() -> metricName(executable, metric, metricName(annotation), isMetricAbsolute(annotation)));
         return new DoesHaveMetric<>(annotation, name);
     }
 
     private <T extends Annotation> Of<T> beanResolverOf(Executable executable, Class<T> metric, Class<?> bean) {
-        if (bean.isAnnotationPresent(metric)) {
+        if (bean.isAnnotationPresent(metric) && !extension.levels().isEnabled(bean)) {
+            return new DoesNotHaveMetric<>();
+        } else if (bean.isAnnotationPresent(metric)) {
             T annotation = bean.getAnnotation(metric);
             String name = metricName(bean, executable, metric, metricName(annotation), isMetricAbsolute(annotation));
             return new DoesHaveMetric<>(annotation, name);
@@ -91,6 +110,15 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.UseAbsoluteName;;;
         return new DoesNotHaveMetric<>();
     }
 
+    // The names generated at compile time do not account for the absolute name configuration
+    private Optional<String> generatedMetricName(Executable executable, Class<? extends Annotation> metric) {
+        if (extension.<Boolean>getParameter(UseAbsoluteName).orElse(false))
+            return Optional.empty();
+
+        return GeneratedMetadata.of(executable.getDeclaringClass())
+            .map(metadata -> metadata.metricName(metric, GeneratedMetadata.member(executable)));
+    }
+
     // TODO: should be grouped with the metric name strategy
     private String metricName(Executable executable, Class<? extends Annotation> type, String name, boolean absolute) {
         String metric = name.isEmpty() ? defaultName(executable, type) : metricName.of(name);
@@ -133,6 +161,8 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.UseAbsoluteName;;;
             return ((Metered) annotation).name();
         else if (Timed.class.isInstance(annotation))
             return ((Timed) annotation).name();
+        else if (WeightedMetered.class.isInstance(annotation))
+            return ((WeightedMetered) annotation).name();
         else
             throw new IllegalArgumentException("Unsupported Metrics forMethod [" + annotation.getClass().getName() + "]");
     }
@@ -153,6 +183,8 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.UseAbsoluteName;;;
             return ((Metered) annotation).absolute();
         else if (Timed.class.isInstance(annotation))
             return ((Timed) annotation).absolute();
+        else if (WeightedMetered.class.isInstance(annotation))
+            return ((WeightedMetered) annotation).absolute();
         else
             throw new IllegalArgumentException("Unsupported Metrics forMethod [" + annotation.getClass().getName() + "]");
     }
@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+@Vetoed
+/* package-private */ final class MetricSwitches implements MetricSwitchesMBean {
+
+    // The disabled patterns are rarely modified while they are read on every binding resolution
+    private final Map<String, Pattern> disabled = new ConcurrentHashMap<>();
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public String[] getDisabledPatterns() {
+        return disabled.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public void disable(String pattern) {
+        disabled.put(pattern, glob(pattern));
+        listeners.forEach(Runnable::run);
+    }
+
+    @Override
+    public void enable(String pattern) {
+        if (disabled.remove(pattern) != null)
+            listeners.forEach(Runnable::run);
+    }
+
+    @Override
+    public boolean isEnabled(String name) {
+        for (Pattern pattern : disabled.values())
+            if (pattern.matcher(name).matches())
+                return false;
+        return true;
+    }
+
+    static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (String literal : glob.split("((?<=[*?])|(?=[*?]))")) {
+            if ("*".equals(literal))
+                regex.append(".*");
+            else if ("?".equals(literal))
+                regex.append('.');
+            else if (!literal.isEmpty())
+                regex.append(Pattern.quote(literal));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
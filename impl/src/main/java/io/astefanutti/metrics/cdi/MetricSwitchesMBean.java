@@ -0,0 +1,54 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+/**
+ * Management interface of the switches that disable the intercepted metrics at runtime.
+ * <p>
+ * A disabled metric is not updated by the {@code @Counted}, {@code @ExceptionMetered}, {@code @Metered}
+ * and {@code @Timed} interceptors, that directly proceed with the intercepted invocation. Metrics are
+ * disabled by patterns that match their names, where {@code *} matches any sequence of characters
+ * and {@code ?} matches any single character.
+ *
+ * @since 1.7.0
+ */
+public interface MetricSwitchesMBean {
+
+    /**
+     * @return the patterns of the names of the disabled metrics
+     */
+    String[] getDisabledPatterns();
+
+    /**
+     * Disables the metrics whose names match the given pattern.
+     *
+     * @param pattern the pattern of the names of the metrics to disable
+     */
+    void disable(String pattern);
+
+    /**
+     * Removes the given pattern from the disabled patterns, so that the metrics whose names match it are enabled again unless they match another disabled pattern.
+     *
+     * @param pattern the pattern to remove
+     */
+    void enable(String pattern);
+
+    /**
+     * @param name the name of a metric
+     * @return whether the metric with the given name is enabled
+     */
+    boolean isEnabled(String name);
+}
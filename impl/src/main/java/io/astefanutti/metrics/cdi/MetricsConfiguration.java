@@ -17,7 +17,9 @@ package io.astefanutti.metrics.cdi;
 
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.Reservoir;
+import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 
 /**
@@ -46,4 +48,71 @@ public interface MetricsConfiguration {
      * @since 1.5.0
      */
     MetricsConfiguration reservoirFunction(BiFunction<String, Class<? extends Metric>, Optional<Reservoir>> function);
+
+    /**
+     * Schedules the registered health checks to run periodically in the background so that the health check registry returns their last results instead of executing them on every call.
+     * A cached result that is older than the {@code staleness} threshold is reported as unhealthy.
+     *
+     * @param period the delay between the termination of one execution of a health check and the commencement of the next
+     * @param staleness the age after which the last result of a health check is reported as unhealthy
+     * @param unit the time unit of the {@code period} and {@code staleness} arguments
+     * @return this Metrics CDI configuration
+     * @throws IllegalArgumentException if the {@code period} is not positive or if the {@code staleness} is not greater than the {@code period}, which fails the deployment
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @since 1.7.0
+     */
+    MetricsConfiguration healthCheckSchedule(long period, long staleness, TimeUnit unit);
+
+    /**
+     * Sets the time the {@link GaugeEvaluator} bean waits for each gauge to return its value, after which the last value returned by the gauge is used instead.
+     *
+     * @param timeout the maximum time to wait for the value of each gauge
+     * @param unit the time unit of the {@code timeout} argument
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @since 1.7.0
+     */
+    MetricsConfiguration gaugeTimeout(long timeout, TimeUnit unit);
+
+    /**
+     * Registers the metrics of all the intercepted beans and resolves their interception bindings at deployment time instead of on first use,
+     * so that the first invocations of the intercepted methods do not pay for the metrics initialization.
+     *
+     * @param warmUp the value whether to warm up the metrics at deployment time
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @since 1.7.0
+     */
+    MetricsConfiguration warmUp(boolean warmUp);
+
+    /**
+     * Disables the intercepted metrics whose names match any of the given patterns, where {@code *} matches any sequence of characters
+     * and {@code ?} matches any single character. The metrics can be enabled and disabled at runtime with the {@link MetricSwitchesMBean} MBean.
+     *
+     * @param patterns the patterns of the names of the metrics to disable
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @since 1.7.0
+     */
+    MetricsConfiguration disabledMetrics(String... patterns);
+
+    /**
+     * Stores the counts of the counters and meters produced for the Metrics annotations and injection points, whose names match any of the given patterns,
+     * in the given memory-mapped file, so that they survive the termination of the JVM and get restored on the next start. The patterns use the same syntax
+     * as for {@link #disabledMetrics(String...)} and all the counters and meters get stored if none is given.
+     * <p>
+     * The file can be read by external tools. All its values are little-endian and it starts with a 64 bytes header made of the magic number {@code 0x4d434443},
+     * the layout version, the slot capacity, the slot size and the number of slots in use as integers, followed by the slots, of 128 bytes each, made of the
+     * metric type, {@code 1} for counters and {@code 2} for meters, and the name length as integers, the UTF-8 encoded name on 112 bytes and the count as a long.
+     * The names longer than 112 bytes are truncated on a character boundary and padded with zeros to 104 bytes, followed by the 64-bit FNV-1a hash of
+     * their full UTF-8 encoding, and their length remains the full length.
+     * The counters and meters that do not fit in the file are kept in memory.
+     *
+     * @param file the file the counts get mapped to, created if it does not exist
+     * @param patterns the patterns of the names of the counters and meters to store
+     * @return this Metrics CDI configuration
+     * @throws IllegalStateException if called outside of the observer method invocation
+     * @since 1.7.0
+     */
+    MetricsConfiguration mappedMetrics(Path file, String... patterns);
 }
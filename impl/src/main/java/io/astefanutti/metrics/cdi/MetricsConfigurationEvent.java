@@ -17,10 +17,14 @@ package io.astefanutti.metrics.cdi;
 
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.Reservoir;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 
 /* package-private */ final class MetricsConfigurationEvent implements MetricsConfiguration {
@@ -43,6 +47,48 @@ import java.util.function.BiFunction;
         return this;
     }
 
+    @Override
+    public MetricsConfiguration healthCheckSchedule(long period, long staleness, TimeUnit unit) {
+        throwsIfUnmodifiable();
+        if (period <= 0)
+            throw new IllegalArgumentException("Health check schedule period must be positive, was [" + period + " " + unit + "]");
+        // The last results would otherwise be reported as stale before the next executions complete
+        if (staleness <= period)
+            throw new IllegalArgumentException("Health check staleness must be greater than the schedule period [" + period + " " + unit + "], was [" + staleness + " " + unit + "]");
+        configuration.put(MetricsParameter.HealthCheckPeriod, Duration.ofNanos(unit.toNanos(period)));
+        configuration.put(MetricsParameter.HealthCheckStaleness, Duration.ofNanos(unit.toNanos(staleness)));
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration gaugeTimeout(long timeout, TimeUnit unit) {
+        throwsIfUnmodifiable();
+        configuration.put(MetricsParameter.GaugeTimeout, Duration.ofNanos(unit.toNanos(timeout)));
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration warmUp(boolean warmUp) {
+        throwsIfUnmodifiable();
+        configuration.put(MetricsParameter.WarmUp, Boolean.valueOf(warmUp));
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration disabledMetrics(String... patterns) {
+        throwsIfUnmodifiable();
+        configuration.put(MetricsParameter.DisabledMetrics, Arrays.asList(patterns));
+        return this;
+    }
+
+    @Override
+    public MetricsConfiguration mappedMetrics(Path file, String... patterns) {
+        throwsIfUnmodifiable();
+        configuration.put(MetricsParameter.MappedMetricsFile, file);
+        configuration.put(MetricsParameter.MappedMetricsPatterns, Arrays.asList(patterns));
+        return this;
+    }
+
     Map<MetricsParameter, Object> getParameters() {
         return Collections.unmodifiableMap(configuration);
     }
@@ -51,6 +97,10 @@ import java.util.function.BiFunction;
         unmodifiable = true;
     }
 
+    boolean isUnmodifiable() {
+        return unmodifiable;
+    }
+
     private void throwsIfUnmodifiable() {
         if (unmodifiable)
             throw new IllegalStateException("Metrics CDI configuration event must not be used outside its observer method!");
@@ -15,6 +15,8 @@
  */
 package io.astefanutti.metrics.cdi;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
@@ -26,51 +28,272 @@ import com.codahale.metrics.annotation.Metered;
 import com.codahale.metrics.annotation.Timed;
 
 import javax.enterprise.event.Observes;
+import javax.decorator.Decorator;
 import javax.enterprise.inject.Default;
 import javax.enterprise.inject.spi.AfterBeanDiscovery;
 import javax.enterprise.inject.spi.AfterDeploymentValidation;
+import javax.enterprise.inject.spi.Annotated;
+import javax.enterprise.inject.spi.AnnotatedConstructor;
+import javax.enterprise.inject.spi.AnnotatedField;
 import javax.enterprise.inject.spi.AnnotatedMember;
+import javax.enterprise.inject.spi.AnnotatedMethod;
+import javax.enterprise.inject.spi.AnnotatedType;
 import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
 import javax.enterprise.inject.spi.BeforeBeanDiscovery;
+import javax.enterprise.inject.spi.BeforeShutdown;
 import javax.enterprise.inject.spi.Extension;
 import javax.enterprise.inject.spi.ProcessAnnotatedType;
+import javax.enterprise.inject.spi.ProcessInjectionTarget;
+import javax.enterprise.inject.spi.ProcessManagedBean;
 import javax.enterprise.inject.spi.ProcessProducerField;
 import javax.enterprise.inject.spi.ProcessProducerMethod;
 import javax.enterprise.inject.spi.WithAnnotations;
 import javax.enterprise.util.AnnotationLiteral;
+import javax.inject.Inject;
+import javax.interceptor.Interceptor;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static io.astefanutti.metrics.cdi.CdiHelper.declareAsInterceptorBinding;
+import static io.astefanutti.metrics.cdi.CdiHelper.getRawType;
 import static io.astefanutti.metrics.cdi.CdiHelper.getReference;
 import static io.astefanutti.metrics.cdi.CdiHelper.hasInjectionPoints;
+import static io.astefanutti.metrics.cdi.CdiHelper.hasParameters;
+import static io.astefanutti.metrics.cdi.MetricsParameter.DisabledMetrics;
+import static io.astefanutti.metrics.cdi.MetricsParameter.MappedMetricsFile;
+import static io.astefanutti.metrics.cdi.MetricsParameter.MappedMetricsPatterns;
+import static io.astefanutti.metrics.cdi.MetricsParameter.WarmUp;
 
 public class MetricsExtension implements Extension {
 
+    private static final Logger LOGGER = Logger.getLogger(MetricsExtension.class.getName());
+
     private static final AnnotationLiteral<MetricsBinding> METRICS_BINDING = new AnnotationLiteral<MetricsBinding>(){};
 
     private static final AnnotationLiteral<Default> DEFAULT = new AnnotationLiteral<Default>(){};
 
+    private static final Set<Class<? extends Annotation>> INSTRUMENTED_ANNOTATIONS = new HashSet<>(Arrays.asList(Counted.class, ExceptionMetered.class, Metered.class, Timed.class));
+
+    private static final Set<Class<? extends Annotation>> METRICS_ANNOTATIONS = new HashSet<>(Arrays.asList(CachedGauge.class, Counted.class, ExceptionMetered.class, Gauge.class, Metered.class, Timed.class, WeightedMetered.class));
+
     private final Map<Bean<?>, AnnotatedMember<?>> metrics = new HashMap<>();
 
+    private final List<Constructor<?>> constructors = new ArrayList<>();
+
     private final MetricsConfigurationEvent configuration = new MetricsConfigurationEvent();
 
+    private final ConcurrentMap<Class<?>, Set<String>> gauges = new ConcurrentHashMap<>();
+
+    private final MetricSwitches switches = new MetricSwitches();
+
+    private ObjectName switchesName;
+
+    private InterceptionPlans plans;
+
+    private MetricLevels levels;
+
+    private InstrumentationRules instrumentation;
+
+    private MappedMetrics mapped;
+
+    private final Set<Method> instrumented = ConcurrentHashMap.newKeySet();
+
     @SuppressWarnings("unchecked")
     <T> Optional<T> getParameter(MetricsParameter parameter) {
         return (Optional<T>) Optional.ofNullable(configuration.getParameters().get(parameter));
     }
 
+    MetricLevels levels() {
+        return levels;
+    }
+
+    InstrumentationRules instrumentation() {
+        return instrumentation;
+    }
+
+    // Returns the counter with the given name, whose count is stored in the mapped file when configured so
+    Counter counter(MetricRegistry registry, String name) {
+        MappedMetrics mapped = this.mapped;
+        if (mapped == null || !mapped.matches(name))
+            return registry.counter(name);
+        return registry.counter(name, () -> Optional.ofNullable(mapped.counter(name)).orElseGet(Counter::new));
+    }
+
+    // Returns the meter with the given name, whose count is stored in the mapped file when configured so
+    Meter meter(MetricRegistry registry, String name) {
+        MappedMetrics mapped = this.mapped;
+        if (mapped == null || !mapped.matches(name))
+            return registry.meter(name);
+        return registry.meter(name, () -> Optional.ofNullable(mapped.meter(name)).orElseGet(Meter::new));
+    }
+
+    // Returns whether the given executable is timed by the instrumentation rules rather than by annotations
+    boolean isInstrumented(Executable executable) {
+        return instrumented.contains(executable);
+    }
+
+    MetricSwitches switches() {
+        return switches;
+    }
+
+    // Returns the names of the gauges registered for the instances of the given bean class
+    Set<String> gauges(Class<?> bean) {
+        return gauges.computeIfAbsent(bean, type -> ConcurrentHashMap.newKeySet());
+    }
+
     private void addInterceptorBindings(@Observes BeforeBeanDiscovery bbd, BeanManager manager) {
+        // The metric level threshold is needed while processing the annotated types, before the configuration event can be fired
+        MetricsProperties properties = new MetricsProperties(Thread.currentThread().getContextClassLoader());
+        levels = new MetricLevels(properties.get("level").orElse(MetricLevel.INFO));
+        instrumentation = new InstrumentationRules(properties);
+
         declareAsInterceptorBinding(Counted.class, manager, bbd);
         declareAsInterceptorBinding(ExceptionMetered.class, manager, bbd);
         declareAsInterceptorBinding(Metered.class, manager, bbd);
         declareAsInterceptorBinding(Timed.class, manager, bbd);
+        declareAsInterceptorBinding(WeightedMetered.class, manager, bbd);
+    }
+
+    private <X> void metricsAnnotations(@Observes @WithAnnotations({CachedGauge.class, Counted.class, ExceptionMetered.class, Gauge.class, Metered.class, Timed.class, WeightedMetered.class}) ProcessAnnotatedType<X> pat) {
+        AnnotatedType<X> type = pat.getAnnotatedType();
+        // The types instrumented by the pattern rules, that the container may match on their timed methods, are already bound
+        if (type instanceof AnnotatedTypeDecorator)
+            return;
+
+        // Strip the metrics annotations below the level threshold so that no interceptor gets bound for them
+        Set<Class<? extends Annotation>> removed = levels.isEnabled(type.getJavaClass()) ? Collections.emptySet() : METRICS_ANNOTATIONS;
+        boolean enabled = removed.isEmpty() && hasMetricsAnnotations(type);
+
+        Set<AnnotatedMethod<? super X>> methods = new HashSet<>();
+        for (AnnotatedMethod<? super X> method : type.getMethods()) {
+            if (!hasMetricsAnnotations(method))
+                continue;
+            if (!levels.isEnabled(method.getJavaMember())) {
+                methods.add(new AnnotatedMethodDecorator<>(method, METRICS_ANNOTATIONS));
+            } else if (InstrumentedMetrics.isInstrumented(method.getJavaMember())) {
+                // The agent has instrumented the method bytecode so that only its gauges remain bound to the interceptors
+                methods.add(new AnnotatedMethodDecorator<>(method, INSTRUMENTED_ANNOTATIONS));
+                enabled |= method.isAnnotationPresent(Gauge.class) || method.isAnnotationPresent(CachedGauge.class);
+            } else {
+                enabled = true;
+            }
+        }
+
+        Set<AnnotatedConstructor<X>> constructors = new HashSet<>();
+        for (AnnotatedConstructor<X> constructor : type.getConstructors()) {
+            if (!hasMetricsAnnotations(constructor))
+                continue;
+            if (levels.isEnabled(constructor.getJavaMember()))
+                enabled = true;
+            else
+                constructors.add(new AnnotatedConstructorDecorator<>(constructor, METRICS_ANNOTATIONS));
+        }
+
+        if (removed.isEmpty() && methods.isEmpty() && constructors.isEmpty())
+            pat.setAnnotatedType(new AnnotatedTypeDecorator<>(type, METRICS_BINDING));
+        else
+            pat.setAnnotatedType(new AnnotatedTypeDecorator<>(type, enabled ? Collections.singleton(METRICS_BINDING) : Collections.emptySet(), removed, methods, constructors));
+    }
+
+    // The observers of the same event are only ordered by priority since CDI 2.0, so that each of them skips the types the other one has decorated
+    private <X> void patternInstrumentation(@Observes ProcessAnnotatedType<X> pat) {
+        AnnotatedType<X> type = pat.getAnnotatedType();
+        // The types declaring metrics annotations are only instrumented according to their annotations
+        if (type instanceof AnnotatedTypeDecorator || !instrumentation.matches(type) || declaresMetrics(type) || !levels.isEnabled(type.getJavaClass())
+            || type.isAnnotationPresent(Interceptor.class) || type.isAnnotationPresent(Decorator.class) || Extension.class.isAssignableFrom(type.getJavaClass()))
+            return;
+
+        Set<AnnotatedMethod<? super X>> methods = new HashSet<>();
+        for (AnnotatedMethod<? super X> method : type.getMethods()) {
+            if (instrumentation.matches(method) && levels.isEnabled(method.getJavaMember())) {
+                methods.add(new AnnotatedMethodDecorator<>(method, InstrumentationRules.TIMED));
+                instrumented.add(method.getJavaMember());
+            }
+        }
+
+        if (!methods.isEmpty())
+            pat.setAnnotatedType(new AnnotatedTypeDecorator<>(type, METRICS_BINDING, methods));
+    }
+
+    private static boolean declaresMetrics(AnnotatedType<?> type) {
+        if (hasMetricsAnnotations(type))
+            return true;
+        for (AnnotatedMethod<?> method : type.getMethods()) {
+            if (hasMetricsAnnotations(method))
+                return true;
+        }
+        for (AnnotatedConstructor<?> constructor : type.getConstructors()) {
+            if (hasMetricsAnnotations(constructor))
+                return true;
+        }
+        for (AnnotatedField<?> field : type.getFields()) {
+            if (hasMetricsAnnotations(field))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean hasMetricsAnnotations(Annotated annotated) {
+        for (Class<? extends Annotation> annotation : METRICS_ANNOTATIONS) {
+            if (annotated.isAnnotationPresent(annotation))
+                return true;
+        }
+        return false;
+    }
+
+    private <X> void gaugesUnregistration(@Observes ProcessInjectionTarget<X> pit, BeanManager manager) {
+        // Unregister the gauges bound to bean instances when they get destroyed
+        if (hasGauges(pit.getAnnotatedType()))
+            pit.setInjectionTarget(new GaugesInjectionTarget<>(pit.getInjectionTarget(), gauges(pit.getAnnotatedType().getJavaClass()), manager));
+    }
+
+    private static boolean hasGauges(AnnotatedType<?> type) {
+        for (AnnotatedMethod<?> method : type.getMethods()) {
+            if (method.isAnnotationPresent(Gauge.class) || method.isAnnotationPresent(CachedGauge.class))
+                return true;
+        }
+        return false;
     }
 
-    private <X> void metricsAnnotations(@Observes @WithAnnotations({CachedGauge.class, Counted.class, ExceptionMetered.class, Gauge.class, Metered.class, Timed.class}) ProcessAnnotatedType<X> pat) {
-        pat.setAnnotatedType(new AnnotatedTypeDecorator<>(pat.getAnnotatedType(), METRICS_BINDING));
+    private <X> void metricsBeans(@Observes ProcessManagedBean<X> pmb) {
+        // Collect the constructors of the intercepted beans for the warm-up
+        if (!pmb.getAnnotatedBeanClass().isAnnotationPresent(MetricsBinding.class))
+            return;
+        AnnotatedConstructor<X> noArgs = null;
+        for (AnnotatedConstructor<X> constructor : pmb.getAnnotatedBeanClass().getConstructors()) {
+            if (constructor.isAnnotationPresent(Inject.class)) {
+                constructors.add(constructor.getJavaMember());
+                return;
+            }
+            if (constructor.getParameters().isEmpty())
+                noArgs = constructor;
+        }
+        if (noArgs != null)
+            constructors.add(noArgs.getJavaMember());
     }
 
     private void metricProducerField(@Observes ProcessProducerField<? extends Metric, ?> ppf) {
@@ -85,29 +308,98 @@ public class MetricsExtension implements Extension {
 
     private void defaultMetricRegistry(@Observes AfterBeanDiscovery abd, BeanManager manager) {
         if (manager.getBeans(MetricRegistry.class).isEmpty())
-            abd.addBean(new SyntheticBean<MetricRegistry>(manager, MetricRegistry.class, "metric-registry", "Default Metric Registry Bean"));
+            abd.addBean(new SyntheticBean<>(manager, IndexedMetricRegistry.class, "metric-registry", "Default Metric Registry Bean"));
     }
 
     private void configuration(@Observes AfterDeploymentValidation adv, BeanManager manager) {
         // Fire configuration event
-        manager.fireEvent(configuration);
-        configuration.unmodifiable();
+        fireConfigurationEvent(manager);
+
+        // Disable the configured metrics and expose the metric switches over JMX
+        this.<List<String>>getParameter(DisabledMetrics).ifPresent(patterns -> patterns.forEach(switches::disable));
+        registerSwitches();
 
         // Produce and register custom metrics
         MetricRegistry registry = getReference(manager, MetricRegistry.class);
         MetricName metricName = getReference(manager, MetricName.class);
         for (Map.Entry<Bean<?>, AnnotatedMember<?>> bean : metrics.entrySet()) {
-            // TODO: add MetricSet metrics into the metric registry
-            if (bean.getKey().getTypes().contains(MetricSet.class)
+            // skip metric registries
+            if (bean.getKey().getTypes().contains(MetricRegistry.class)
                 // skip non @Default beans
                 || !bean.getKey().getQualifiers().contains(DEFAULT)
                 // skip producer methods with injection point
                 || hasInjectionPoints(bean.getValue()))
                 continue;
-            registry.register(metricName.of(bean.getValue()), (Metric) getReference(manager, bean.getValue().getBaseType(), bean.getKey()));
+            Type type = bean.getValue().getBaseType();
+            Supplier<Metric> metric = () -> getReference(manager, type, bean.getKey());
+            if (bean.getKey().getTypes().contains(MetricSet.class) || hasParameters(bean.getValue()))
+                // Metric set metrics are registered with the metric set name as prefix and producer method parameters may register metrics, which requires to produce them eagerly
+                registry.register(metricName.of(bean.getValue()), metric.get());
+            else
+                // Other metrics are registered eagerly but only produced the first time they get accessed
+                registry.register(metricName.of(bean.getValue()), DeferredMetric.of(getRawType(type), metric).orElseGet(metric));
         }
 
         // Let's clear the collected metric producers
         metrics.clear();
+
+        plans = getReference(manager, InterceptionPlans.class);
+
+        // Map the file that stores the counts of the counters and meters before they get registered
+        this.<Path>getParameter(MappedMetricsFile).ifPresent(file -> {
+            try {
+                mapped = new MappedMetrics(file, this.<List<String>>getParameter(MappedMetricsPatterns).orElse(Collections.emptyList()));
+            } catch (IOException cause) {
+                throw new IllegalStateException("Unable to map metrics file [" + file + "]", cause);
+            }
+        });
+
+        // Register the intercepted beans metrics and resolve their interception bindings ahead of their first use
+        if (this.<Boolean>getParameter(WarmUp).orElse(false)) {
+            for (Constructor<?> constructor : constructors)
+                plans.of(constructor.getDeclaringClass()).register(constructor);
+        }
+        constructors.clear();
+
+        // Bind the methods instrumented by the agent, if any, to the intercepted beans metrics of this deployment
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        InstrumentedMetrics.bind(loader != null ? loader : MetricsExtension.class.getClassLoader(), plans, getReference(manager, MetricResolver.class));
+    }
+
+    private void unbindInstrumentedMetrics(@Observes BeforeShutdown shutdown) {
+        if (plans != null)
+            InstrumentedMetrics.unbind(plans);
+    }
+
+    private void forceMappedMetrics(@Observes BeforeShutdown shutdown) {
+        if (mapped != null)
+            mapped.force();
+    }
+
+    private void unregisterSwitches(@Observes BeforeShutdown shutdown) throws JMException {
+        if (switchesName != null)
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(switchesName);
+    }
+
+    private void registerSwitches() {
+        // Each deployment has its own switches
+        String name = "io.astefanutti.metrics.cdi:type=MetricSwitches,id=" + Integer.toHexString(System.identityHashCode(this));
+        try {
+            ObjectName objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(switches, MetricSwitchesMBean.class), objectName);
+            switchesName = objectName;
+        } catch (JMException | SecurityException cause) {
+            // Metrics cannot be switched at runtime without JMX though the configured switches still apply
+            LOGGER.log(Level.WARNING, "Unable to register metric switches MBean [" + name + "], metrics cannot be switched at runtime", cause);
+        }
+    }
+
+    // The configuration event is fired at most once, either by this extension or by the health check extension, whichever observes the after deployment validation event first
+    void fireConfigurationEvent(BeanManager manager) {
+        if (configuration.isUnmodifiable())
+            return;
+
+        manager.fireEvent(configuration);
+        configuration.unmodifiable();
     }
 }
\ No newline at end of file
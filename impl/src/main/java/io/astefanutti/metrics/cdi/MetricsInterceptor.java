@@ -17,29 +17,19 @@ package io.astefanutti.metrics.cdi;
 
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.Reservoir;
-import com.codahale.metrics.Timer;
 import com.codahale.metrics.annotation.CachedGauge;
-import com.codahale.metrics.annotation.Counted;
-import com.codahale.metrics.annotation.ExceptionMetered;
 import com.codahale.metrics.annotation.Gauge;
-import com.codahale.metrics.annotation.Metered;
-import com.codahale.metrics.annotation.Timed;
 
 import javax.annotation.Priority;
 import javax.inject.Inject;
 import javax.interceptor.AroundConstruct;
 import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
-import java.lang.reflect.Executable;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.util.Optional;
+import java.util.Collection;
 import java.util.concurrent.TimeUnit;
-import java.util.function.BiFunction;
-
-import static io.astefanutti.metrics.cdi.MetricsParameter.ReservoirFunction;
+import java.util.function.Function;
 
 @Interceptor
 @MetricsBinding
@@ -53,44 +43,44 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.ReservoirFunction;
 
     private final MetricsExtension extension;
 
+    private final InterceptionPlans plans;
+
     @Inject
-    private MetricsInterceptor(MetricRegistry registry, MetricResolver resolver, MetricsExtension extension) {
+    private MetricsInterceptor(MetricRegistry registry, MetricResolver resolver, MetricsExtension extension, InterceptionPlans plans) {
         this.registry = registry;
         this.resolver = resolver;
         this.extension = extension;
+        this.plans = plans;
     }
 
     @AroundConstruct
     private Object metrics(InvocationContext context) throws Exception {
         Class<?> bean = context.getConstructor().getDeclaringClass();
 
-        // Registers the bean constructor metrics
-        registerMetrics(bean, context.getConstructor());
-
-        // Registers the methods metrics over the bean type hierarchy
-        Class<?> type = bean;
-        do {
-            // TODO: discover annotations declared on implemented interfaces
-            for (Method method : type.getDeclaredMethods())
-                if (!method.isSynthetic() && !Modifier.isPrivate(method.getModifiers()))
-                    registerMetrics(bean, method);
-            type = type.getSuperclass();
-        } while (!Object.class.equals(type));
+        // Registers the bean constructor and methods metrics
+        plans.of(bean).register(context.getConstructor());
 
         Object target = context.proceed();
 
         // Registers the gauges over the bean type hierarchy after the target is constructed as it is required for the gauge invocations
-        type = bean;
+        Class<?> type = bean;
         do {
             // TODO: discover annotations declared on implemented interfaces
             for (Method method : type.getDeclaredMethods()) {
                 MetricResolver.Of<CachedGauge> cachedGauge = resolver.cachedGauge(bean, method);
-                if (cachedGauge.isPresent())
-                    registry.register(cachedGauge.metricName(), new CachingGauge(new ForwardingGauge(method, context.getTarget()), cachedGauge.metricAnnotation().timeout(), cachedGauge.metricAnnotation().timeoutUnit()));
-    
+                if (cachedGauge.isPresent()) {
+                    registerGauge(cachedGauge.metricName(), new CachingGauge(new ForwardingGauge(method, context.getTarget()), cachedGauge.metricAnnotation().timeout(), cachedGauge.metricAnnotation().timeoutUnit()));
+                    extension.gauges(bean).add(cachedGauge.metricName());
+                }
+
                 MetricResolver.Of<Gauge> gauge = resolver.gauge(bean, method);
-                if (gauge.isPresent())
-                    registry.register(gauge.metricName(), new ForwardingGauge(method, context.getTarget()));
+                if (gauge.isPresent()) {
+                    if (method.isAnnotationPresent(Aggregate.class))
+                        aggregatingGauge(gauge.metricName(), method).add(context.getTarget());
+                    else
+                        registerGauge(gauge.metricName(), new ForwardingGauge(method, context.getTarget()));
+                    extension.gauges(bean).add(gauge.metricName());
+                }
             }
             type = type.getSuperclass();
         } while (!Object.class.equals(type));
@@ -98,33 +88,46 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.ReservoirFunction;
         return target;
     }
 
-    private void registerMetrics(Class<?> bean, Executable executable) {
-        MetricResolver.Of<Counted> counted = resolver.counted(bean, executable);
-        if (counted.isPresent())
-            registry.counter(counted.metricName());
-
-        MetricResolver.Of<ExceptionMetered> exceptionMetered = resolver.exceptionMetered(bean, executable);
-        if (exceptionMetered.isPresent())
-            registry.meter(exceptionMetered.metricName());
-
-        MetricResolver.Of<Metered> metered = resolver.metered(bean, executable);
-        if (metered.isPresent())
-            registry.meter(metered.metricName());
-
-        MetricResolver.Of<Timed> timed = resolver.timed(bean, executable);
-        if (timed.isPresent()) {
-            extension.<BiFunction<String, Class<? extends Metric>, Optional<Reservoir>>>getParameter(ReservoirFunction)
-                .flatMap(function -> function.apply(timed.metricName(), Timer.class))
-                .map(reservoir -> registry.timer(timed.metricName(), () -> new Timer(reservoir)))
-                .orElseGet(() -> registry.timer(timed.metricName()));
+    private void registerGauge(String name, InstanceGauge gauge) {
+        // Replaces any gauge bound to an instance that has been garbage collected without being destroyed
+        Metric registered = registry.getMetrics().get(name);
+        if (registered instanceof InstanceGauge && ((InstanceGauge) registered).isBoundTo(null))
+            registry.remove(name);
+
+        registry.register(name, gauge);
+    }
+
+    private AggregatingGauge aggregatingGauge(String name, Method method) {
+        // The aggregating gauge is registered by the first instance and shared by the following ones
+        Metric gauge = registry.gauge(name, () -> new AggregatingGauge(method, method.getAnnotation(Aggregate.class).value()));
+        if (!(gauge instanceof AggregatingGauge))
+            throw new IllegalArgumentException(name + " is already used for a non-aggregating gauge");
+
+        return (AggregatingGauge) gauge;
+    }
+
+    // Unregisters the gauges bound to the given instance, or removes it from the aggregating gauges, so that the registry does not retain it
+    static void unregisterGauges(MetricRegistry registry, Collection<String> names, Object instance) {
+        for (String name : names) {
+            Metric gauge = registry.getMetrics().get(name);
+            if (gauge instanceof InstanceGauge && ((InstanceGauge) gauge).isBoundTo(instance))
+                registry.remove(name);
+            else if (gauge instanceof AggregatingGauge)
+                ((AggregatingGauge) gauge).remove(instance);
         }
     }
 
-    private static final class CachingGauge extends com.codahale.metrics.CachedGauge<Object> {
+    private interface InstanceGauge extends Metric {
+
+        // Returns whether the gauge is bound to the given instance, null for an instance that has been garbage collected
+        boolean isBoundTo(Object instance);
+    }
+
+    private static final class CachingGauge extends com.codahale.metrics.CachedGauge<Object> implements InstanceGauge {
 
-        private final com.codahale.metrics.Gauge<?> gauge;
-        
-        private CachingGauge(com.codahale.metrics.Gauge<?> gauge, long timeout, TimeUnit timeoutUnit) {
+        private final ForwardingGauge gauge;
+
+        private CachingGauge(ForwardingGauge gauge, long timeout, TimeUnit timeoutUnit) {
             super(timeout, timeoutUnit);
             this.gauge = gauge;
         }
@@ -133,31 +136,34 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.ReservoirFunction;
         protected Object loadValue() {
             return gauge.getValue();
         }
+
+        @Override
+        public boolean isBoundTo(Object instance) {
+            return gauge.isBoundTo(instance);
+        }
     }
 
-    private static final class ForwardingGauge implements com.codahale.metrics.Gauge<Object> {
+    private static final class ForwardingGauge implements com.codahale.metrics.Gauge<Object>, InstanceGauge {
 
-        private final Method method;
+        private final Function<Object, Object> accessor;
 
-        private final Object object;
+        // The gauge does not prevent the bean instance from being garbage collected
+        private final WeakReference<Object> object;
 
         private ForwardingGauge(Method method, Object object) {
-            this.method = method;
-            this.object = object;
-            method.setAccessible(true);
+            this.accessor = GeneratedMetadata.gauge(method);
+            this.object = new WeakReference<>(object);
         }
 
         @Override
         public Object getValue() {
-            return invokeMethod(method, object);
+            Object object = this.object.get();
+            return object != null ? accessor.apply(object) : null;
         }
-    }
 
-    private static Object invokeMethod(Method method, Object object) {
-        try {
-            return method.invoke(object);
-        } catch (IllegalAccessException | InvocationTargetException cause) {
-            throw new IllegalStateException("Error while calling method [" + method + "]", cause);
+        @Override
+        public boolean isBoundTo(Object instance) {
+            return object.get() == instance;
         }
     }
 }
@@ -0,0 +1,51 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import java.lang.annotation.Annotation;
+import java.util.function.Function;
+
+/**
+ * Metrics metadata of a bean class, generated at compile time by the Metrics CDI annotation processor as the
+ * {@code <bean class binary name>_MetricsMetadata} class, so that they do not get resolved by reflection at runtime.
+ * <p>
+ * Members are identified by their name, {@code <init>} for constructors, followed by the comma-separated names of their
+ * erased parameter types between parentheses, e.g. {@code timedMethod(java.lang.String,int[])}.
+ *
+ * @since 1.7.0
+ */
+public interface MetricsMetadata {
+
+    /**
+     * @param metric the type of the metric annotation
+     * @param member the identifier of the annotated member
+     * @return the name of the metric declared on the member, or {@code null} if it is not resolved at compile time
+     */
+    String metricName(Class<? extends Annotation> metric, String member);
+
+    /**
+     * @param member the identifier of the declaring method or constructor
+     * @param position the position of the parameter
+     * @return the name of the parameter, or {@code null} if it is not retained at compile time
+     */
+    String parameterName(String member, int position);
+
+    /**
+     * @param member the identifier of the gauge method
+     * @return the function that returns the value of the gauge for a bean instance, or {@code null} if the method is not accessible
+     */
+    Function<Object, Object> gauge(String member);
+}
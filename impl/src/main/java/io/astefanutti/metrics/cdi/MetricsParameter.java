@@ -19,5 +19,12 @@ package io.astefanutti.metrics.cdi;
 /* package-private */ enum MetricsParameter {
 
     UseAbsoluteName,
-    ReservoirFunction
+    ReservoirFunction,
+    HealthCheckPeriod,
+    HealthCheckStaleness,
+    GaugeTimeout,
+    WarmUp,
+    DisabledMetrics,
+    MappedMetricsFile,
+    MappedMetricsPatterns
 }
@@ -0,0 +1,57 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import javax.enterprise.inject.Vetoed;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Optional;
+import java.util.Properties;
+
+// The deployment properties are read before the beans discovery, when the configuration event cannot be fired yet
+@Vetoed
+/* package-private */ final class MetricsProperties {
+
+    static final String RESOURCE = "META-INF/metrics-cdi.properties";
+
+    static final String PREFIX = "io.astefanutti.metrics.cdi.";
+
+    private final Properties properties = new Properties();
+
+    MetricsProperties(ClassLoader loader) {
+        try {
+            Enumeration<URL> resources = loader.getResources(RESOURCE);
+            while (resources.hasMoreElements()) {
+                try (InputStream stream = resources.nextElement().openStream()) {
+                    properties.load(stream);
+                }
+            }
+        } catch (IOException cause) {
+            throw new UncheckedIOException("Error while reading [" + RESOURCE + "] resources", cause);
+        }
+        // The system properties override the resources properties
+        for (String name : System.getProperties().stringPropertyNames())
+            if (name.startsWith(PREFIX))
+                properties.setProperty(name.substring(PREFIX.length()), System.getProperty(name));
+    }
+
+    Optional<String> get(String key) {
+        return Optional.ofNullable(properties.getProperty(key));
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+// Measures the subscriptions to the publishers returned by the timed and metered methods rather than their assembly
+@Vetoed
+/* package-private */ final class PublisherMetrics {
+
+    // Resolved by name as the Flow API is not available before Java 9
+    private static final Class<?> FLOW_PUBLISHER = flowPublisher();
+
+    // Resolved by name as the Flow publisher decorator is not compiled by the Java 8 builds
+    private static final MethodHandle DECORATE = decorator();
+
+    private final Timer duration;
+
+    private final Timer firstItem;
+
+    private final Counter cancellations;
+
+    private final Counter errors;
+
+    private final Meter items;
+
+    private PublisherMetrics(Timer duration, Timer firstItem, Counter cancellations, Counter errors, Meter items) {
+        this.duration = duration;
+        this.firstItem = firstItem;
+        this.cancellations = cancellations;
+        this.errors = errors;
+        this.items = items;
+    }
+
+    static boolean isPublisher(Executable executable) {
+        return FLOW_PUBLISHER != null && DECORATE != null && executable instanceof Method && FLOW_PUBLISHER.isAssignableFrom(((Method) executable).getReturnType());
+    }
+
+    // The timer records the subscriptions durations and the derived metrics the time to the first item, the cancellations, the errors and the emitted items
+    static PublisherMetrics timed(MetricRegistry registry, String name) {
+        return new PublisherMetrics(registry.timer(name), registry.timer(name(name, "first-item")), registry.counter(name(name, "cancellations")), registry.counter(name(name, "errors")), registry.meter(name(name, "items")));
+    }
+
+    // The meter keeps marking the invocations and the derived meter marks the emitted items
+    static PublisherMetrics metered(MetricRegistry registry, String name) {
+        return new PublisherMetrics(null, null, null, null, registry.meter(name(name, "items")));
+    }
+
+    Object decorate(Object publisher) {
+        try {
+            return DECORATE.invokeExact(publisher, this);
+        } catch (RuntimeException | Error cause) {
+            throw cause;
+        } catch (Throwable cause) {
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    long start() {
+        return System.nanoTime();
+    }
+
+    void firstItem(long start) {
+        if (firstItem != null)
+            firstItem.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    void items(long count) {
+        if (items != null && count > 0)
+            items.mark(count);
+    }
+
+    void completed(long start) {
+        if (duration != null)
+            duration.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    void cancelled(long start) {
+        completed(start);
+        if (cancellations != null)
+            cancellations.inc();
+    }
+
+    void failed(long start) {
+        completed(start);
+        if (errors != null)
+            errors.inc();
+    }
+
+    private static Class<?> flowPublisher() {
+        try {
+            return Class.forName("java.util.concurrent.Flow$Publisher", false, PublisherMetrics.class.getClassLoader());
+        } catch (ClassNotFoundException cause) {
+            return null;
+        }
+    }
+
+    private static MethodHandle decorator() {
+        if (FLOW_PUBLISHER == null)
+            return null;
+        try {
+            Class<?> decorator = Class.forName("io.astefanutti.metrics.cdi.FlowPublisher", true, PublisherMetrics.class.getClassLoader());
+            return MethodHandles.lookup().findStatic(decorator, "decorate", MethodType.methodType(Object.class, Object.class, PublisherMetrics.class));
+        } catch (ReflectiveOperationException cause) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.health.HealthCheck;
+
+import javax.enterprise.inject.Vetoed;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@Vetoed
+/* package-private */ final class ScheduledHealthCheck extends HealthCheck implements Runnable {
+
+    private final HealthCheck healthCheck;
+
+    private final long staleness;
+
+    private volatile Execution execution;
+
+    private ScheduledHealthCheck(HealthCheck healthCheck, Duration staleness) {
+        this.healthCheck = healthCheck;
+        this.staleness = staleness.toNanos();
+    }
+
+    static HealthCheck schedule(HealthCheck healthCheck, ScheduledExecutorService executor, Duration period, Duration staleness) {
+        ScheduledHealthCheck scheduled = new ScheduledHealthCheck(healthCheck, staleness);
+        // The first execution is not delayed so that a result gets published early, which resolves the lazy health checks right after deployment
+        executor.scheduleWithFixedDelay(scheduled, 0L, period.toNanos(), NANOSECONDS);
+        return scheduled;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        Result result;
+        // Any error escaping the execution would otherwise cancel the subsequent executions
+        try {
+            result = healthCheck.execute();
+        } catch (Throwable cause) {
+            result = Result.unhealthy(cause);
+        }
+        long end = System.nanoTime();
+        execution = new Execution(withDuration(result, end - start), end);
+    }
+
+    @Override
+    protected Result check() {
+        Execution execution = this.execution;
+        if (execution == null)
+            return Result.unhealthy("Health check has not been executed yet");
+
+        long age = System.nanoTime() - execution.time;
+        if (age > staleness)
+            return Result.unhealthy("Health check has not reported for %d ms", NANOSECONDS.toMillis(age));
+
+        return execution.result;
+    }
+
+    private static Result withDuration(Result result, long duration) {
+        ResultBuilder builder = Result.builder();
+        if (result.isHealthy())
+            builder.healthy();
+        else if (result.getError() != null)
+            builder.unhealthy(result.getError());
+        else
+            builder.unhealthy();
+
+        if (result.getMessage() != null)
+            builder.withMessage(result.getMessage());
+
+        Map<String, Object> details = result.getDetails();
+        if (details != null)
+            details.forEach(builder::withDetail);
+
+        return builder.withDetail("duration", NANOSECONDS.toMillis(duration)).build();
+    }
+
+    private static final class Execution {
+
+        private final Result result;
+
+        private final long time;
+
+        Execution(Result result, long time) {
+            this.result = result;
+            this.time = time;
+        }
+    }
+}
@@ -23,8 +23,10 @@ import javax.enterprise.inject.spi.Annotated;
 import javax.enterprise.inject.spi.AnnotatedMember;
 import javax.enterprise.inject.spi.AnnotatedParameter;
 import javax.enterprise.inject.spi.InjectionPoint;
+import java.lang.reflect.Executable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.util.Optional;
 
 import static io.astefanutti.metrics.cdi.MetricsParameter.UseAbsoluteName;
 
@@ -77,6 +79,13 @@ import static io.astefanutti.metrics.cdi.MetricsParameter.UseAbsoluteName;
     // To be refactored eventually when CDI SPI integrates JEP-118.
     // TODO: move into a separate metric name strategy
     private String getParameterName(AnnotatedParameter<?> parameter) {
+        // Use the parameter name retained at compile time if any
+        Executable executable = (Executable) parameter.getDeclaringCallable().getJavaMember();
+        Optional<String> generated = GeneratedMetadata.of(executable.getDeclaringClass())
+            .map(metadata -> metadata.parameterName(GeneratedMetadata.member(executable), parameter.getPosition()));
+        if (generated.isPresent())
+            return generated.get();
+
         Parameter[] parameters = ((Method) parameter.getDeclaringCallable().getJavaMember()).getParameters();
         Parameter param = parameters[parameter.getPosition()];
         if (param.isNamePresent()) {
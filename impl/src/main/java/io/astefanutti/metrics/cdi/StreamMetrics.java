@@ -0,0 +1,295 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.BaseStream;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+// Measures the consumption of the streams returned by the methods annotated with @MeasuredStream, until they get closed, in addition to their invocations
+@Vetoed
+/* package-private */ final class StreamMetrics {
+
+    // Other stream types cannot be decorated without changing the type of the returned stream
+    private static final Set<Class<?>> STREAMS = new HashSet<>(Arrays.asList(BaseStream.class, Stream.class, IntStream.class, LongStream.class, DoubleStream.class));
+
+    private final Timer duration;
+
+    private final Histogram elements;
+
+    private final Meter items;
+
+    private StreamMetrics(Timer duration, Histogram elements, Meter items) {
+        this.duration = duration;
+        this.elements = elements;
+        this.items = items;
+    }
+
+    static boolean isStream(Executable executable) {
+        return executable instanceof Method && STREAMS.contains(((Method) executable).getReturnType()) && executable.isAnnotationPresent(MeasuredStream.class);
+    }
+
+    // The derived timer records the time elapsed until the streams get closed and the derived histogram their number of elements, if counted
+    static StreamMetrics timed(MetricRegistry registry, String name, Executable executable) {
+        return new StreamMetrics(registry.timer(name(name, "consumption")), counts(executable) ? registry.histogram(name(name, "elements")) : null, null);
+    }
+
+    // The derived meter marks the consumed elements, if counted, otherwise the streams are not decorated
+    static StreamMetrics metered(MetricRegistry registry, String name, Executable executable) {
+        return counts(executable) ? new StreamMetrics(null, null, registry.meter(name(name, "items"))) : null;
+    }
+
+    private static boolean counts(Executable executable) {
+        return executable.getAnnotation(MeasuredStream.class).elements();
+    }
+
+    // Only the elements traversed by the terminal operation get counted, which excludes those skipped by short-circuiting operations
+    Object decorate(Object stream) {
+        long start = System.nanoTime();
+        if (elements == null && items == null)
+            return ((BaseStream<?, ?>) stream).onClose(() -> closed(start, 0));
+
+        LongAdder count = new LongAdder();
+        Runnable close = () -> closed(start, count.sum());
+        // The elements are counted by the source spliterator rather than with peek as the sized streams may not be traversed, e.g. by count()
+        if (stream instanceof IntStream) {
+            IntStream ints = (IntStream) stream;
+            return StreamSupport.intStream(new CountingInts(ints.spliterator(), count), ints.isParallel()).onClose(ints::close).onClose(close);
+        }
+        if (stream instanceof LongStream) {
+            LongStream longs = (LongStream) stream;
+            return StreamSupport.longStream(new CountingLongs(longs.spliterator(), count), longs.isParallel()).onClose(longs::close).onClose(close);
+        }
+        if (stream instanceof DoubleStream) {
+            DoubleStream doubles = (DoubleStream) stream;
+            return StreamSupport.doubleStream(new CountingDoubles(doubles.spliterator(), count), doubles.isParallel()).onClose(doubles::close).onClose(close);
+        }
+        if (stream instanceof Stream) {
+            Stream<?> objects = (Stream<?>) stream;
+            return StreamSupport.stream(new Counting<>(objects.spliterator(), count), objects.isParallel()).onClose(objects::close).onClose(close);
+        }
+        return ((BaseStream<?, ?>) stream).onClose(close);
+    }
+
+    private void closed(long start, long count) {
+        if (duration != null)
+            duration.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (elements != null)
+            elements.update(count);
+        if (items != null && count > 0)
+            items.mark(count);
+    }
+
+    private static class Counting<T, S extends Spliterator<T>> implements Spliterator<T> {
+
+        final S spliterator;
+
+        final LongAdder count;
+
+        Counting(S spliterator, LongAdder count) {
+            this.spliterator = spliterator;
+            this.count = count;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            return spliterator.tryAdvance(element -> {
+                count.increment();
+                action.accept(element);
+            });
+        }
+
+        // Counts the traversed elements locally rather than contending on the shared counter for each of them
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            long[] traversed = new long[1];
+            spliterator.forEachRemaining(element -> {
+                traversed[0]++;
+                action.accept(element);
+            });
+            count.add(traversed[0]);
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            Spliterator<T> split = spliterator.trySplit();
+            return split != null ? new Counting<>(split, count) : null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return spliterator.estimateSize();
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return spliterator.getComparator();
+        }
+
+        // Not sized so that the size is not used in place of the traversal
+        @Override
+        public int characteristics() {
+            return spliterator.characteristics() & ~(SIZED | SUBSIZED);
+        }
+    }
+
+    private static final class CountingInts extends Counting<Integer, Spliterator.OfInt> implements Spliterator.OfInt {
+
+        CountingInts(Spliterator.OfInt spliterator, LongAdder count) {
+            super(spliterator, count);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            return spliterator.tryAdvance((int element) -> {
+                count.increment();
+                action.accept(element);
+            });
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Integer> action) {
+            return OfInt.super.tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            long[] traversed = new long[1];
+            spliterator.forEachRemaining((int element) -> {
+                traversed[0]++;
+                action.accept(element);
+            });
+            count.add(traversed[0]);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Integer> action) {
+            OfInt.super.forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            Spliterator.OfInt split = spliterator.trySplit();
+            return split != null ? new CountingInts(split, count) : null;
+        }
+    }
+
+    private static final class CountingLongs extends Counting<Long, Spliterator.OfLong> implements Spliterator.OfLong {
+
+        CountingLongs(Spliterator.OfLong spliterator, LongAdder count) {
+            super(spliterator, count);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            return spliterator.tryAdvance((long element) -> {
+                count.increment();
+                action.accept(element);
+            });
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Long> action) {
+            return OfLong.super.tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long[] traversed = new long[1];
+            spliterator.forEachRemaining((long element) -> {
+                traversed[0]++;
+                action.accept(element);
+            });
+            count.add(traversed[0]);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Long> action) {
+            OfLong.super.forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            Spliterator.OfLong split = spliterator.trySplit();
+            return split != null ? new CountingLongs(split, count) : null;
+        }
+    }
+
+    private static final class CountingDoubles extends Counting<Double, Spliterator.OfDouble> implements Spliterator.OfDouble {
+
+        CountingDoubles(Spliterator.OfDouble spliterator, LongAdder count) {
+            super(spliterator, count);
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            return spliterator.tryAdvance((double element) -> {
+                count.increment();
+                action.accept(element);
+            });
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Double> action) {
+            return OfDouble.super.tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            long[] traversed = new long[1];
+            spliterator.forEachRemaining((double element) -> {
+                traversed[0]++;
+                action.accept(element);
+            });
+            count.add(traversed[0]);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Double> action) {
+            OfDouble.super.forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            Spliterator.OfDouble split = spliterator.trySplit();
+            return split != null ? new CountingDoubles(split, count) : null;
+        }
+    }
+}
@@ -15,7 +15,6 @@
  */
 package io.astefanutti.metrics.cdi;
 
-import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.annotation.Timed;
 
@@ -35,17 +34,11 @@ import javax.interceptor.AroundTimeout;
 @Priority(Interceptor.Priority.LIBRARY_BEFORE  + 10)
 /* package-private */ class TimedInterceptor {
 
-    private final Bean<?> bean;
-
-    private final MetricRegistry registry;
-
-    private final MetricResolver resolver;
+    private final InterceptionPlan plan;
 
     @Inject
-    private TimedInterceptor(@Intercepted Bean<?> bean, MetricRegistry registry, MetricResolver resolver) {
-        this.bean = bean;
-        this.registry = registry;
-        this.resolver = resolver;
+    private TimedInterceptor(@Intercepted Bean<?> bean, InterceptionPlans plans) {
+        this.plan = plans.of(bean.getBeanClass());
     }
 
     @AroundConstruct
@@ -64,14 +57,18 @@ import javax.interceptor.AroundTimeout;
     }
 
     private Object timedCallable(InvocationContext context, Executable executable) throws Exception {
-        String name = resolver.timed(bean.getBeanClass(), executable).metricName();
-        Timer timer = (Timer) registry.getMetrics().get(name);
-        if (timer == null)
-            throw new IllegalStateException("No timer with name [" + name + "] found in registry [" + registry + "]");
+        InterceptionPlan.Binding<Timer, Timed> timed = plan.timed(executable);
+        if (!timed.isEnabled())
+            return context.proceed();
 
-        Timer.Context time = timer.time();
+        // The returned publisher subscriptions get timed rather than its assembly
+        if (timed.defersResult())
+            return timed.decorate(context.proceed());
+
+        Timer.Context time = timed.metric().time();
         try {
-            return context.proceed();
+            // The returned stream consumption gets timed as well
+            return timed.decoratesResult() ? timed.decorate(context.proceed()) : context.proceed();
         } finally {
             time.stop();
         }
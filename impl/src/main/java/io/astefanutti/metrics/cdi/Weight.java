@@ -0,0 +1,111 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import javax.enterprise.inject.Vetoed;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+// Reads the weight of the invocations of a weighted metered method with an accessor resolved once from the declared type
+@Vetoed
+/* package-private */ final class Weight {
+
+    private final int parameter;
+
+    private final ToLongFunction<Object> accessor;
+
+    private final Histogram sizes;
+
+    private Weight(int parameter, ToLongFunction<Object> accessor, Histogram sizes) {
+        this.parameter = parameter;
+        this.accessor = accessor;
+        this.sizes = sizes;
+    }
+
+    static Weight of(Method method, WeightedMetered metered, MetricRegistry registry, String name) {
+        int parameter = metered.weight();
+        Class<?> type;
+        if (parameter == WeightedMetered.RETURN_VALUE)
+            type = method.getReturnType();
+        else if (parameter >= 0 && parameter < method.getParameterCount())
+            type = method.getParameterTypes()[parameter];
+        else
+            throw new IllegalArgumentException("No parameter at index [" + parameter + "] for weighted metered method [" + method + "]");
+
+        ToLongFunction<Object> accessor = accessor(type);
+        if (accessor == null)
+            throw new IllegalArgumentException("Unsupported weight type [" + type.getName() + "] for weighted metered method [" + method + "], must be a number, a collection, a map or an array");
+
+        return new Weight(parameter, accessor, metered.histogram() ? registry.histogram(name(name, "sizes")) : null);
+    }
+
+    boolean isArgument() {
+        return parameter != WeightedMetered.RETURN_VALUE;
+    }
+
+    Object argument(Object[] arguments) {
+        return arguments[parameter];
+    }
+
+    void mark(Meter meter, Object value) {
+        if (value == null)
+            return;
+
+        long weight = accessor.applyAsLong(value);
+        meter.mark(weight);
+        if (sizes != null)
+            sizes.update(weight);
+    }
+
+    private static ToLongFunction<Object> accessor(Class<?> type) {
+        if (Number.class.isAssignableFrom(type) || type.isPrimitive() && type != boolean.class && type != char.class && type != void.class)
+            return value -> ((Number) value).longValue();
+        else if (Collection.class.isAssignableFrom(type))
+            return value -> ((Collection<?>) value).size();
+        else if (Map.class.isAssignableFrom(type))
+            return value -> ((Map<?, ?>) value).size();
+        else if (!type.isArray())
+            return null;
+
+        Class<?> component = type.getComponentType();
+        if (!component.isPrimitive())
+            return value -> ((Object[]) value).length;
+        else if (component == int.class)
+            return value -> ((int[]) value).length;
+        else if (component == long.class)
+            return value -> ((long[]) value).length;
+        else if (component == byte.class)
+            return value -> ((byte[]) value).length;
+        else if (component == double.class)
+            return value -> ((double[]) value).length;
+        else if (component == float.class)
+            return value -> ((float[]) value).length;
+        else if (component == short.class)
+            return value -> ((short[]) value).length;
+        else if (component == char.class)
+            return value -> ((char[]) value).length;
+        else
+            return value -> ((boolean[]) value).length;
+    }
+}
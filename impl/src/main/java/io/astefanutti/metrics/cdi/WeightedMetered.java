@@ -0,0 +1,77 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a meter by the weight of each invocation of the annotated method rather than by one, e.g. the number of records
+ * of a batch, so that the meter rates reflect the actual throughput.
+ * <p>
+ * The weight is read from the argument at the {@link #weight()} index, or from the returned value by default. It must be
+ * declared as a number, a collection, a map or an array, whose weight is respectively its long value, its size or its
+ * length. The weight accessor is resolved once per method, and a {@code null} weight does not mark the meter. When declared
+ * on a bean class, the weight must be available the same way for all its methods, except for its {@code void} methods that
+ * are not metered when the weight is read from the returned value.
+ * <p>
+ * Given a method annotated with {@literal @}WeightedMetered like this:
+ * <pre><code>
+ *     {@literal @}WeightedMetered(name = "records", weight = 0, histogram = true)
+ *     public void ingest(List&lt;Record&gt; batch) {
+ *         ...
+ *     }
+ * </code></pre>
+ * A meter for the defining class with the name {@code records} will be created and each time the {@code #ingest(List)}
+ * method is invoked, the meter will be marked with the size of the batch, and the {@code records.sizes} histogram updated
+ * with it.
+ *
+ * @since 1.7.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface WeightedMetered {
+
+    /**
+     * The {@link #weight()} index designating the value returned by the annotated method.
+     */
+    int RETURN_VALUE = -1;
+
+    /**
+     * @return the name of the meter
+     */
+    String name() default "";
+
+    /**
+     * @return if {@code true}, use the given name as an absolute name. If {@code false}, use the given name relative to
+     * the annotated class
+     */
+    boolean absolute() default false;
+
+    /**
+     * @return the index of the argument carrying the weight, or {@link #RETURN_VALUE} for the returned value
+     */
+    int weight() default RETURN_VALUE;
+
+    /**
+     * @return if {@code true}, also update the {@code <name>.sizes} histogram with the weight of each invocation
+     */
+    boolean histogram() default false;
+}
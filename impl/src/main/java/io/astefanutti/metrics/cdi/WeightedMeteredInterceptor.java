@@ -0,0 +1,56 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi;
+
+import com.codahale.metrics.Meter;
+
+import javax.annotation.Priority;
+import javax.enterprise.inject.Intercepted;
+import javax.enterprise.inject.spi.Bean;
+import javax.inject.Inject;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+
+@WeightedMetered
+@Interceptor
+@Priority(Interceptor.Priority.LIBRARY_BEFORE + 10)
+/* package-private */ class WeightedMeteredInterceptor {
+
+    private final InterceptionPlan plan;
+
+    @Inject
+    private WeightedMeteredInterceptor(@Intercepted Bean<?> bean, InterceptionPlans plans) {
+        this.plan = plans.of(bean.getBeanClass());
+    }
+
+    @AroundInvoke
+    private Object weightedMeteredMethod(InvocationContext context) throws Exception {
+        InterceptionPlan.Binding<Meter, WeightedMetered> metered = plan.weightedMetered(context.getMethod());
+        if (metered == null || !metered.isEnabled())
+            return context.proceed();
+
+        Weight weight = metered.weight();
+        if (weight.isArgument()) {
+            weight.mark(metered.metric(), weight.argument(context.getParameters()));
+            return context.proceed();
+        }
+
+        Object result = context.proceed();
+        weight.mark(metered.metric(), result);
+        return result;
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright © 2013 Antonin Stefanutti (antonin.stefanutti@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.astefanutti.metrics.cdi.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the {@code io.astefanutti.metrics.cdi.MetricsMetadata} of the classes declaring metrics annotations or
+ * injection parameters, so that Metrics CDI does not resolve them by reflection at runtime.
+ * <p>
+ * The metadata are generated as the {@code <class binary name>_MetricsMetadata} classes and hold the names of the metrics
+ * declared on methods and constructors, the accessors of the non-private gauge methods and the names of the parameters
+ * of the {@code @Inject} and {@code @Produces} methods and constructors, that otherwise require the {@code -parameters}
+ * compiler argument.
+ *
+ * @since 1.7.0
+ */
+@SupportedAnnotationTypes("*")
+public final class MetricsProcessor extends AbstractProcessor {
+
+    static final String SUFFIX = "_MetricsMetadata";
+
+    private static final String ANNOTATION_PACKAGE = "com.codahale.metrics.annotation.";
+
+    private static final List<String> METRICS = Arrays.asList("CachedGauge", "Counted", "ExceptionMetered", "Gauge", "Metered", "Timed");
+
+    private static final Set<String> GAUGES = new HashSet<>(Arrays.asList(ANNOTATION_PACKAGE + "CachedGauge", ANNOTATION_PACKAGE + "Gauge"));
+
+    private static final Set<String> INJECTIONS = new HashSet<>(Arrays.asList("javax.inject.Inject", "javax.enterprise.inject.Produces"));
+
+    // The names with expressions are resolved at runtime
+    private static final Pattern EXPRESSION = Pattern.compile("[#|$]\\{(.*)\\}");
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (TypeElement type : ElementFilter.typesIn(round.getRootElements()))
+            process(type);
+        // Do not claim the annotations
+        return false;
+    }
+
+    private void process(TypeElement type) {
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements()))
+            process(nested);
+
+        if (type.getKind() != ElementKind.CLASS)
+            return;
+
+        Map<String, String> names = new LinkedHashMap<>();
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        Map<String, String> gauges = new LinkedHashMap<>();
+        boolean accessible = isAccessible(type);
+
+        for (Element element : type.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.METHOD && element.getKind() != ElementKind.CONSTRUCTOR)
+                continue;
+            ExecutableElement executable = (ExecutableElement) element;
+            String member = member(executable);
+
+            for (AnnotationMirror annotation : executable.getAnnotationMirrors()) {
+                String annotationType = ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+                if (isMetric(annotationType)) {
+                    String name = metricName(type, executable, annotation, annotationType);
+                    if (name != null)
+                        names.put(annotationType + '#' + member, name);
+                    if (GAUGES.contains(annotationType) && accessible && executable.getParameters().isEmpty() && executable.getThrownTypes().isEmpty() && !executable.getModifiers().contains(Modifier.PRIVATE))
+                        gauges.put(member, executable.getModifiers().contains(Modifier.STATIC)
+                            ? type.getQualifiedName() + "." + executable.getSimpleName() + "()"
+                            : "((" + type.getQualifiedName() + ") bean)." + executable.getSimpleName() + "()");
+                } else if (INJECTIONS.contains(annotationType) && !executable.getParameters().isEmpty()) {
+                    parameters.put(member, parameterNames(executable));
+                }
+            }
+        }
+
+        if (!names.isEmpty() || !parameters.isEmpty() || !gauges.isEmpty())
+            generate(type, names, parameters, gauges);
+    }
+
+    private boolean isMetric(String annotationType) {
+        return annotationType.startsWith(ANNOTATION_PACKAGE) && METRICS.contains(annotationType.substring(ANNOTATION_PACKAGE.length()));
+    }
+
+    // Mirrors the resolution of the metric names declared on methods and constructors
+    private String metricName(TypeElement type, ExecutableElement executable, AnnotationMirror annotation, String annotationType) {
+        String name = "";
+        boolean absolute = false;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : processingEnv.getElementUtils().getElementValuesWithDefaults(annotation).entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals("name"))
+                name = (String) value.getValue().getValue();
+            else if (value.getKey().getSimpleName().contentEquals("absolute"))
+                absolute = (Boolean) value.getValue().getValue();
+        }
+        if (EXPRESSION.matcher(name).matches())
+            return null;
+
+        String metric = name.isEmpty() ? defaultName(type, executable, annotationType) : name;
+        return absolute ? metric : processingEnv.getElementUtils().getBinaryName(type) + "." + metric;
+    }
+
+    private static String defaultName(TypeElement type, ExecutableElement executable, String annotationType) {
+        String name = executable.getKind() == ElementKind.CONSTRUCTOR ? type.getSimpleName().toString() : executable.getSimpleName().toString();
+        return annotationType.equals(ANNOTATION_PACKAGE + "ExceptionMetered") ? name + ".exceptions" : name;
+    }
+
+    private String member(ExecutableElement executable) {
+        StringJoiner member = new StringJoiner(",", (executable.getKind() == ElementKind.CONSTRUCTOR ? "<init>" : executable.getSimpleName()) + "(", ")");
+        for (VariableElement parameter : executable.getParameters())
+            member.add(typeName(parameter.asType()));
+        return member.toString();
+    }
+
+    // Returns the name of the erased type as returned by the Class#getTypeName method
+    private String typeName(TypeMirror type) {
+        TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+        if (erasure.getKind() == TypeKind.ARRAY)
+            return typeName(((ArrayType) erasure).getComponentType()) + "[]";
+        else if (erasure.getKind() == TypeKind.DECLARED)
+            return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) erasure).asElement()).toString();
+        else
+            return erasure.toString();
+    }
+
+    private static List<String> parameterNames(ExecutableElement executable) {
+        String[] names = new String[executable.getParameters().size()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = executable.getParameters().get(i).getSimpleName().toString();
+        return Arrays.asList(names);
+    }
+
+    // Returns whether the type can be referenced from a class of the same package
+    private static boolean isAccessible(TypeElement type) {
+        Element element = type;
+        while (element.getKind().isClass() || element.getKind().isInterface()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE))
+                return false;
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type, Map<String, String> names, Map<String, List<String>> parameters, Map<String, String> gauges) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        if (!generated.add(binaryName))
+            return;
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+        boolean vetoed = processingEnv.getElementUtils().getTypeElement("javax.enterprise.inject.Vetoed") != null;
+
+        Filer filer = processingEnv.getFiler();
+        try (Writer writer = filer.createSourceFile(binaryName + SUFFIX, type).openWriter()) {
+            if (!packageName.isEmpty())
+                writer.append("package ").append(packageName).append(";\n\n");
+            writer.append("import java.util.HashMap;\n");
+            writer.append("import java.util.Map;\n");
+            writer.append("import java.util.function.Function;\n\n");
+            if (vetoed)
+                writer.append("@javax.enterprise.inject.Vetoed\n");
+            writer.append("@SuppressWarnings(\"all\")\n");
+            writer.append("public final class ").append(simpleName).append(" implements io.astefanutti.metrics.cdi.MetricsMetadata {\n\n");
+            writer.append("    private static final Map<String, String> NAMES = new HashMap<>();\n\n");
+            writer.append("    private static final Map<String, String[]> PARAMETERS = new HashMap<>();\n\n");
+            writer.append("    private static final Map<String, Function<Object, Object>> GAUGES = new HashMap<>();\n\n");
+            writer.append("    static {\n");
+            for (Map.Entry<String, String> name : names.entrySet())
+                writer.append("        NAMES.put(").append(literal(name.getKey())).append(", ").append(literal(name.getValue())).append(");\n");
+            for (Map.Entry<String, List<String>> parameter : parameters.entrySet()) {
+                StringJoiner values = new StringJoiner(", ", "new String[] {", "}");
+                for (String value : parameter.getValue())
+                    values.add(literal(value));
+                writer.append("        PARAMETERS.put(").append(literal(parameter.getKey())).append(", ").append(values.toString()).append(");\n");
+            }
+            for (Map.Entry<String, String> gauge : gauges.entrySet())
+                writer.append("        GAUGES.put(").append(literal(gauge.getKey())).append(", bean -> ").append(gauge.getValue()).append(");\n");
+            writer.append("    }\n\n");
+            writer.append("    @Override\n");
+            writer.append("    public String metricName(Class<? extends java.lang.annotation.Annotation> metric, String member) {\n");
+            writer.append("        return NAMES.get(metric.getName() + '#' + member);\n");
+            writer.append("    }\n\n");
+            writer.append("    @Override\n");
+            writer.append("    public String parameterName(String member, int position) {\n");
+            writer.append("        String[] names = PARAMETERS.get(member);\n");
+            writer.append("        return names != null && position < names.length ? names[position] : null;\n");
+            writer.append("    }\n\n");
+            writer.append("    @Override\n");
+            writer.append("    public Function<Object, Object> gauge(String member) {\n");
+            writer.append("        return GAUGES.get(member);\n");
+            writer.append("    }\n");
+            writer.append("}\n");
+        } catch (IOException cause) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Error while generating the metrics metadata: " + cause, type);
+        }
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\')
+                literal.append('\\').append(c);
+            else if (c < 0x20 || c > 0x7e)
+                literal.append(String.format("\\u%04x", (int) c));
+            else
+                literal.append(c);
+        }
+        return literal.append('"').toString();
+    }
+}